@@ -0,0 +1,112 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Map;
+
+import org.yaml.snakeyaml.Yaml;
+
+/**
+ * The game configuration, loaded from a YAML file. Values are accessed by their dot separated path, such as "meshing.threads". Missing or invalid values are replaced by the provided defaults, so
+ * an incomplete or absent file is never an error.
+ */
+public class Configuration {
+    private final Map<?, ?> root;
+
+    private Configuration(Map<?, ?> root) {
+        this.root = root;
+    }
+
+    /**
+     * Loads the configuration from the file. If it can't be read, an empty configuration is returned instead, and the error is logged.
+     *
+     * @param file The configuration file
+     * @param game The game, for logging
+     * @return The loaded configuration
+     */
+    public static Configuration load(File file, Game game) {
+        if (file.exists()) {
+            try (InputStream input = new FileInputStream(file)) {
+                final Object loaded = new Yaml().load(input);
+                if (loaded instanceof Map) {
+                    return new Configuration((Map<?, ?>) loaded);
+                }
+            } catch (Exception ex) {
+                game.getLogger().error("Couldn't load the configuration from \"" + file + "\", using the defaults", ex);
+            }
+        }
+        return new Configuration(Collections.emptyMap());
+    }
+
+    /**
+     * Returns the integer at the path, or the default value if there's none or if it's not a number.
+     *
+     * @param path The dot separated path of the value
+     * @param def The default value
+     * @return The value at the path or the default value
+     */
+    public int getInt(String path, int def) {
+        final Object value = get(path);
+        return value instanceof Number ? ((Number) value).intValue() : def;
+    }
+
+    /**
+     * Returns the boolean at the path, or the default value if there's none or if it's not a boolean.
+     *
+     * @param path The dot separated path of the value
+     * @param def The default value
+     * @return The value at the path or the default value
+     */
+    public boolean getBoolean(String path, boolean def) {
+        final Object value = get(path);
+        return value instanceof Boolean ? (Boolean) value : def;
+    }
+
+    /**
+     * Returns the string at the path, or the default value if there's none. Values which aren't strings are converted to one.
+     *
+     * @param path The dot separated path of the value
+     * @param def The default value
+     * @return The value at the path or the default value
+     */
+    public String getString(String path, String def) {
+        final Object value = get(path);
+        return value != null ? value.toString() : def;
+    }
+
+    private Object get(String path) {
+        Object node = root;
+        for (String key : path.split("\\.")) {
+            if (!(node instanceof Map)) {
+                return null;
+            }
+            node = ((Map<?, ?>) node).get(key);
+        }
+        return node;
+    }
+}
@@ -23,6 +23,7 @@
  */
 package org.spoutcraft.client;
 
+import java.io.File;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -43,6 +44,7 @@ public class Game {
     private final Semaphore semaphore = new Semaphore(0);
     private final AtomicBoolean running = new AtomicBoolean(false);
     private final Logger logger;
+    private final Configuration configuration;
     private final Universe universe;
     private final Physics physics;
     private final Interface nterface;
@@ -60,6 +62,7 @@ public class Game {
 
     public Game() {
         logger = LogManager.getLogger("Client");
+        configuration = Configuration.load(new File("config.yml"), this);
         universe = new Universe(this);
         physics = new Physics(this);
         nterface = new Interface(this);
@@ -87,6 +90,10 @@ public class Game {
         return logger;
     }
 
+    public Configuration getConfiguration() {
+        return configuration;
+    }
+
     public Universe getUniverse() {
         return universe;
     }
@@ -30,6 +30,11 @@ import com.flowpowered.commands.CommandException;
 import com.flowpowered.commands.CommandSender;
 import com.flowpowered.commands.annotated.CommandDescription;
 import org.spoutcraft.client.Game;
+import org.spoutcraft.client.nterface.Interface;
+import org.spoutcraft.client.nterface.mesh.GreedyChunkMesher;
+import org.spoutcraft.client.nterface.mesh.ParallelChunkMesher;
+import org.spoutcraft.client.nterface.mesh.ParallelChunkMesher.ChunkBatchModel;
+import org.spoutcraft.client.nterface.mesh.StandardChunkMesher;
 
 public class Commands {
     private final Game game;
@@ -52,6 +57,57 @@ public class Commands {
         game.close();
     }
 
+    @CommandDescription (name = "chunkinflate", usage = "chunkinflate", desc = "Toggles where the chunk data is decoded",
+            help = "Use this command to switch decoding the chunk data between the network pipeline and the universe workers.")
+    private void onCommandChunkInflate(CommandSender sender, CommandArguments args) throws CommandException {
+        final boolean inflate = !game.getNetwork().isInflatingChunks();
+        game.getNetwork().setInflatingChunks(inflate);
+        sender.sendMessage("Chunk data is now decoded by the " + (inflate ? "network pipeline" : "universe"));
+    }
+
+    @CommandDescription (name = "greedymesh", usage = "greedymesh", desc = "Toggles greedy chunk meshing",
+            help = "Use this command to switch the chunk mesher between the greedy one, which merges faces, and the standard one, which doesn't.")
+    private void onCommandGreedyMesh(CommandSender sender, CommandArguments args) throws CommandException {
+        final Interface nterface = game.getInterface();
+        final boolean greedy = !(nterface.getChunkMesher() instanceof GreedyChunkMesher);
+        nterface.setChunkMesher(greedy ? new GreedyChunkMesher() : new StandardChunkMesher());
+        sender.sendMessage("Chunks are now meshed by the " + (greedy ? "greedy" : "standard") + " mesher");
+    }
+
+    @CommandDescription (name = "cavecull", usage = "cavecull", desc = "Toggles the culling of hidden chunks",
+            help = "Use this command to switch the culling of the chunks hidden behind others, such as caves, using the connectivity of their faces. Frustum culling is always enabled.")
+    private void onCommandCaveCull(CommandSender sender, CommandArguments args) throws CommandException {
+        final Interface nterface = game.getInterface();
+        final boolean culling = !nterface.isConnectivityCulling();
+        nterface.setConnectivityCulling(culling);
+        sender.sendMessage("Hidden chunk culling is now " + (culling ? "enabled" : "disabled"));
+    }
+
+    @CommandDescription (name = "occlusioncull", usage = "occlusioncull", desc = "Toggles the occlusion culling of chunks",
+            help = "Use this command to switch the culling of the chunks hidden behind others using hardware occlusion queries, and to display how many chunks it culled on the last frame.")
+    private void onCommandOcclusionCull(CommandSender sender, CommandArguments args) throws CommandException {
+        final Interface nterface = game.getInterface();
+        final int culled = nterface.getOcclusionCulledCount();
+        final boolean culling = !nterface.isOcclusionCulling();
+        nterface.setOcclusionCulling(culling);
+        sender.sendMessage("Occlusion culling is now " + (culling ? "enabled" : "disabled") + ", chunks culled on the last frame: " + culled);
+    }
+
+    @CommandDescription (name = "meshstats", usage = "meshstats", desc = "Displays the chunk meshing statistics",
+            help = "Use this command to display the meshing queue depth, the average task latencies since the last time this command was used and the chunk arena usage.")
+    private void onCommandMeshStats(CommandSender sender, CommandArguments args) throws CommandException {
+        final ParallelChunkMesher mesher = game.getInterface().getParallelChunkMesher();
+        sender.sendMessage("Meshing threads: " + mesher.getThreadCount() + ", pending tasks: " + mesher.getPendingCount() + ", pending uploads: " + mesher.getPendingUploadCount());
+        sender.sendMessage("Completed tasks: " + mesher.getCompletedCount() + ", aborted tasks: " + mesher.getAbortedCount() + ", average wait: " + String.format("%.2f", mesher.getAverageWaitTime())
+                + " ms, average meshing: " + String.format("%.2f", mesher.getAverageMeshTime()) + " ms");
+        final ChunkBatchModel batch = mesher.getBatchModel();
+        if (batch != null) {
+            sender.sendMessage("Chunk arena: " + batch.getArenaAllocatedSize() / 1024 + " of " + batch.getArenaCapacity() / 1024 + " KiB allocated, " + batch.getDrawnCount() + " chunks drawn in "
+                    + batch.getDrawCallCount() + " draw calls per pass");
+        }
+        mesher.resetMetrics();
+    }
+
     @CommandDescription (name = "version", usage = "version", desc = "Displays the game version", help = "Use this command to display the game version.")
     private void onCommandVersion(CommandSender sender, CommandArguments args) throws CommandException {
         sender.sendMessage("Running version " + game.getVersion());
@@ -0,0 +1,107 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.network;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToMessageDecoder;
+import org.spoutcraft.client.Game;
+import org.spoutcraft.client.network.message.play.ChunkDataBulkMessage;
+import org.spoutcraft.client.network.message.play.ChunkDataMessage;
+import org.spoutcraft.client.universe.decode.ChunkColumnDecoder;
+import org.spoutcraft.client.universe.decode.DecodedChunkColumn;
+import org.spoutcraft.client.universe.decode.DecodedChunkColumnsMessage;
+
+/**
+ * An inbound handler that decodes the chunk data and chunk data bulk messages on the network event loop, replacing them by {@link org.spoutcraft.client.universe.decode.DecodedChunkColumnsMessage}s
+ * before they reach the session. The universe then only has to install the columns instead of queuing them to be decoded on its own worker threads. The handler can be enabled or disabled at any
+ * time, in which case the chunk messages are passed on untouched. Column unload messages are never decoded.
+ */
+@Sharable
+public class ChunkInflateHandler extends MessageToMessageDecoder<Object> {
+    private final Game game;
+    private final ChunkColumnDecoder decoder = new ChunkColumnDecoder();
+    private volatile boolean enabled = false;
+
+    /**
+     * Constructs a new chunk inflate handler from the game, disabled by default.
+     *
+     * @param game The game
+     */
+    public ChunkInflateHandler(Game game) {
+        this.game = game;
+    }
+
+    /**
+     * Returns true if the chunk messages are decoded by this handler.
+     *
+     * @return Whether or not the handler is enabled
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Sets whether or not the chunk messages are decoded by this handler. Messages already passed on are not affected.
+     *
+     * @param enabled Whether or not the handler is enabled
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public boolean acceptInboundMessage(Object msg) throws Exception {
+        return enabled && (msg instanceof ChunkDataMessage && !ChunkColumnDecoder.isUnloadColumn((ChunkDataMessage) msg) || msg instanceof ChunkDataBulkMessage);
+    }
+
+    @Override
+    protected void decode(ChannelHandlerContext ctx, Object msg, List<Object> out) throws Exception {
+        // The columns arrive to the universe in order, so they don't need sequence numbers
+        if (msg instanceof ChunkDataMessage) {
+            final ChunkDataMessage message = (ChunkDataMessage) msg;
+            try {
+                final DecodedChunkColumn column = decoder.decode(message, 0);
+                out.add(new DecodedChunkColumnsMessage(Collections.singletonList(column)));
+            } catch (IOException ex) {
+                game.getLogger().error("Failed to decode chunk column (" + message.getColumnX() + ", " + message.getColumnZ() + ")", ex);
+            } finally {
+                message.release();
+            }
+        } else {
+            final ChunkDataBulkMessage message = (ChunkDataBulkMessage) msg;
+            try {
+                out.add(new DecodedChunkColumnsMessage(decoder.decode(message, 0)));
+            } catch (IOException ex) {
+                game.getLogger().error("Failed to decode chunk column bulk of " + message.getColumnCount() + " columns", ex);
+            } finally {
+                message.release();
+            }
+        }
+    }
+}
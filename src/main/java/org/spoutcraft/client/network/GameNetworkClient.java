@@ -34,6 +34,7 @@ import org.spoutcraft.client.network.protocol.HandshakeProtocol;
  */
 public class GameNetworkClient extends NetworkClient {
     private final Game game;
+    private final ChunkInflateHandler chunkInflateHandler;
     private ClientSession session;
 
     /**
@@ -43,10 +44,13 @@ public class GameNetworkClient extends NetworkClient {
      */
     public GameNetworkClient(Game game) {
         this.game = game;
+        chunkInflateHandler = new ChunkInflateHandler(game);
     }
 
     @Override
     public Session newSession(Channel channel) {
+        // The message handler is last in the pipeline, decode the chunks right before it
+        channel.pipeline().addBefore(channel.pipeline().lastContext().name(), "chunkInflater", chunkInflateHandler);
         this.session = new ClientSession(game, channel, new HandshakeProtocol(game));
         return session;
     }
@@ -75,6 +79,24 @@ public class GameNetworkClient extends NetworkClient {
         return game;
     }
 
+    /**
+     * Returns true if the chunk data is decoded in the network pipeline, false if it's decoded by the universe.
+     *
+     * @return Whether or not the chunks are decoded by the network
+     */
+    public boolean isInflatingChunks() {
+        return chunkInflateHandler.isEnabled();
+    }
+
+    /**
+     * Sets whether the chunk data is decoded in the network pipeline or by the universe. Can be changed at any time.
+     *
+     * @param inflate Whether or not the chunks should be decoded by the network
+     */
+    public void setInflatingChunks(boolean inflate) {
+        chunkInflateHandler.setEnabled(inflate);
+    }
+
     /**
      * Returns true if the game's network client has a session.
      *
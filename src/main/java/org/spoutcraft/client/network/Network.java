@@ -121,6 +121,24 @@ public class Network extends TickingElement {
         return client.getSession();
     }
 
+    /**
+     * Returns true if the chunk data is decoded in the network pipeline, false if it's decoded by the universe.
+     *
+     * @return Whether or not the chunks are decoded by the network
+     */
+    public boolean isInflatingChunks() {
+        return client.isInflatingChunks();
+    }
+
+    /**
+     * Sets whether the chunk data is decoded in the network pipeline or by the universe. Can be changed at any time.
+     *
+     * @param inflate Whether or not the chunks should be decoded by the network
+     */
+    public void setInflatingChunks(boolean inflate) {
+        client.setInflatingChunks(inflate);
+    }
+
     /**
      * Gets the {@link java.util.Iterator} storing the messages for the {@link org.spoutcraft.client.network.message.ChannelMessage.Channel}
      *
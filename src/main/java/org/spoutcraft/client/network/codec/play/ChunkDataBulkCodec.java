@@ -27,6 +27,7 @@ import java.io.IOException;
 
 import com.flowpowered.networking.Codec;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import org.spoutcraft.client.network.message.play.ChunkDataBulkMessage;
 
 public class ChunkDataBulkCodec implements Codec<ChunkDataBulkMessage> {
@@ -35,8 +36,7 @@ public class ChunkDataBulkCodec implements Codec<ChunkDataBulkMessage> {
         final short columnCount = buf.readShort();
         final int compressedDataLength = buf.readInt();
         final boolean hasSkyLight = buf.readBoolean();
-        final byte[] compressedData = new byte[compressedDataLength];
-        buf.readBytes(compressedData, 0, compressedData.length);
+        final ByteBuf compressedData = buf.readSlice(compressedDataLength);
         final int[] columnXs = new int[columnCount];
         final int[] columnZs = new int[columnCount];
         final short[] primaryBitMaps = new short[columnCount];
@@ -47,7 +47,9 @@ public class ChunkDataBulkCodec implements Codec<ChunkDataBulkMessage> {
             primaryBitMaps[i] = (short) buf.readUnsignedShort();
             additionalDataBitMaps[i] = (short) buf.readUnsignedShort();
         }
-        return new ChunkDataBulkMessage(columnCount, compressedDataLength, hasSkyLight, compressedData, columnXs, columnZs, primaryBitMaps, additionalDataBitMaps);
+        // Keep a read only view of the data instead of copying it, released once the message is consumed
+        // Only retain it once everything else was read, so nothing is leaked if the message is incomplete
+        return new ChunkDataBulkMessage(columnCount, compressedDataLength, hasSkyLight, Unpooled.unmodifiableBuffer(compressedData.retain()), columnXs, columnZs, primaryBitMaps, additionalDataBitMaps);
     }
 
     @Override
@@ -27,6 +27,7 @@ import java.io.IOException;
 
 import com.flowpowered.networking.Codec;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import org.spoutcraft.client.network.message.play.ChunkDataMessage;
 
 public class ChunkDataCodec implements Codec<ChunkDataMessage> {
@@ -38,8 +39,8 @@ public class ChunkDataCodec implements Codec<ChunkDataMessage> {
         final short primaryBitMap = (short) buf.readUnsignedShort();
         final short additionalDataBitMap = (short) buf.readUnsignedShort();
         final int compressedSize = buf.readInt();
-        final byte[] compressedData = new byte[compressedSize];
-        buf.readBytes(compressedData);
+        // Keep a read only view of the data instead of copying it, released once the message is consumed
+        final ByteBuf compressedData = Unpooled.unmodifiableBuffer(buf.readSlice(compressedSize).retain());
         return new ChunkDataMessage(x, z, groundUpContinuous, primaryBitMap, additionalDataBitMap, compressedSize, compressedData);
     }
 
@@ -25,6 +25,8 @@ package org.spoutcraft.client.network.message.play;
 
 import java.util.Arrays;
 
+import io.netty.buffer.ByteBuf;
+
 import org.spoutcraft.client.network.message.ChannelMessage;
 
 public class ChunkDataBulkMessage extends ChannelMessage {
@@ -32,13 +34,25 @@ public class ChunkDataBulkMessage extends ChannelMessage {
     private final short columnCount;
     private final int compressedDataLength;
     private final boolean hasSkyLight;
-    private final byte[] compressedData;
+    private final ByteBuf compressedData;
     private final int[] columnXs;
     private final int[] columnZs;
     private final short[] primaryBitMaps;
     private final short[] additionalDataBitMaps;
 
-    public ChunkDataBulkMessage(short columnCount, int compressedDataLength, boolean hasSkyLight, byte[] compressedData, int[] columnXs, int[] columnZs, short[] primaryBitMaps, short[] additionalDataBitMaps) {
+    /**
+     * Constructs a new chunk data bulk message. The message takes ownership of the compressed data buffer, which should be read only and is released by {@link #release()}.
+     *
+     * @param columnCount The number of columns
+     * @param compressedDataLength The length of the compressed data
+     * @param hasSkyLight Whether or not the sky light is sent
+     * @param compressedData The compressed data buffer, for all the columns
+     * @param columnXs The x coordinates of the columns
+     * @param columnZs The z coordinates of the columns
+     * @param primaryBitMaps The sections that are sent, for each column
+     * @param additionalDataBitMaps The sections that have additional data, for each column
+     */
+    public ChunkDataBulkMessage(short columnCount, int compressedDataLength, boolean hasSkyLight, ByteBuf compressedData, int[] columnXs, int[] columnZs, short[] primaryBitMaps, short[] additionalDataBitMaps) {
         super(CHANNELS);
 
         this.columnCount = columnCount;
@@ -63,10 +77,24 @@ public class ChunkDataBulkMessage extends ChannelMessage {
         return hasSkyLight;
     }
 
-    public byte[] getCompressedData() {
+    /**
+     * Returns the compressed data buffer. The reader index of the buffer shouldn't be modified, use a duplicate to read it.
+     *
+     * @return The compressed data
+     */
+    public ByteBuf getCompressedData() {
         return compressedData;
     }
 
+    /**
+     * Releases the compressed data buffer. This must be called exactly once, after the message has been consumed.
+     *
+     * @return Whether or not the buffer was deallocated
+     */
+    public boolean release() {
+        return compressedData.release();
+    }
+
     public int[] getColumnXs() {
         return columnXs;
     }
@@ -89,7 +117,6 @@ public class ChunkDataBulkMessage extends ChannelMessage {
                 "columnCount=" + columnCount +
                 ", compressedDataLength=" + compressedDataLength +
                 ", hasSkyLight=" + hasSkyLight +
-                ", compressedData=" + Arrays.toString(compressedData) +
                 ", columnXs=" + Arrays.toString(columnXs) +
                 ", columnZs=" + Arrays.toString(columnZs) +
                 ", primaryBitMaps=" + Arrays.toString(primaryBitMaps) +
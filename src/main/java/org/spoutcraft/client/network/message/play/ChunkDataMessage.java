@@ -23,7 +23,7 @@
  */
 package org.spoutcraft.client.network.message.play;
 
-import java.util.Arrays;
+import io.netty.buffer.ByteBuf;
 
 import org.spoutcraft.client.network.message.ChannelMessage;
 
@@ -35,9 +35,20 @@ public class ChunkDataMessage extends ChannelMessage {
     private final short primaryBitMap;
     private final short additionalDataBitMap;
     private final int compressedDataLength;
-    private final byte[] compressedData;
+    private final ByteBuf compressedData;
 
-    public ChunkDataMessage(int columnX, int columnZ, boolean groundUpContinuous, short primaryBitMap, short additionalDataBitMap, int compressedDataLength, byte[] compressedData) {
+    /**
+     * Constructs a new chunk data message. The message takes ownership of the compressed data buffer, which should be read only and is released by {@link #release()}.
+     *
+     * @param columnX The x coordinate of the column
+     * @param columnZ The z coordinate of the column
+     * @param groundUpContinuous Whether or not the column is ground up continuous
+     * @param primaryBitMap The sections that are sent
+     * @param additionalDataBitMap The sections that have additional data
+     * @param compressedDataLength The length of the compressed data
+     * @param compressedData The compressed data buffer
+     */
+    public ChunkDataMessage(int columnX, int columnZ, boolean groundUpContinuous, short primaryBitMap, short additionalDataBitMap, int compressedDataLength, ByteBuf compressedData) {
         super(CHANNELS);
         this.columnX = columnX;
         this.columnZ = columnZ;
@@ -72,10 +83,24 @@ public class ChunkDataMessage extends ChannelMessage {
         return compressedDataLength;
     }
 
-    public byte[] getCompressedData() {
+    /**
+     * Returns the compressed data buffer. The reader index of the buffer shouldn't be modified, use a duplicate to read it.
+     *
+     * @return The compressed data
+     */
+    public ByteBuf getCompressedData() {
         return compressedData;
     }
 
+    /**
+     * Releases the compressed data buffer. This must be called exactly once, after the message has been consumed.
+     *
+     * @return Whether or not the buffer was deallocated
+     */
+    public boolean release() {
+        return compressedData.release();
+    }
+
     @Override
     public String toString() {
         return "ChunkDataMessage{" +
@@ -85,7 +110,6 @@ public class ChunkDataMessage extends ChannelMessage {
                 ", primaryBitMap=" + primaryBitMap +
                 ", additionalDataBitMap=" + additionalDataBitMap +
                 ", compressedDataLength=" + compressedDataLength +
-                ", compressedData=" + Arrays.toString(compressedData) +
                 '}';
     }
 }
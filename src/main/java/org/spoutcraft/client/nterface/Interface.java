@@ -24,13 +24,16 @@
 package org.spoutcraft.client.nterface;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Queue;
+import java.util.concurrent.TimeUnit;
 
-import com.flowpowered.commons.ViewFrustum;
 import com.flowpowered.commons.ticking.TickingElement;
 import com.flowpowered.math.TrigMath;
 import com.flowpowered.math.imaginary.Quaternionf;
@@ -45,13 +48,22 @@ import org.lwjgl.input.Keyboard;
 import org.spout.renderer.api.Camera;
 import org.spout.renderer.api.GLVersioned.GLVersion;
 
+import org.spoutcraft.client.Configuration;
 import org.spoutcraft.client.Game;
 import org.spoutcraft.client.input.Input;
 import org.spoutcraft.client.input.event.KeyboardEvent;
+import org.spoutcraft.client.nterface.culling.ChunkColumnTree;
+import org.spoutcraft.client.nterface.culling.ConnectivityCuller;
+import org.spoutcraft.client.nterface.culling.ConnectivityCuller.ConnectivityProvider;
+import org.spoutcraft.client.nterface.culling.Frustum;
+import org.spoutcraft.client.nterface.mesh.ChunkMesher;
+import org.spoutcraft.client.nterface.mesh.GreedyChunkMesher;
 import org.spoutcraft.client.nterface.mesh.ParallelChunkMesher;
+import org.spoutcraft.client.nterface.mesh.ParallelChunkMesher.ChunkBatchModel;
 import org.spoutcraft.client.nterface.mesh.ParallelChunkMesher.ChunkModel;
 import org.spoutcraft.client.nterface.mesh.StandardChunkMesher;
 import org.spoutcraft.client.nterface.render.Renderer;
+import org.spoutcraft.client.nterface.render.graph.node.OcclusionCullingNode;
 import org.spoutcraft.client.nterface.snapshot.CameraSnapshot;
 import org.spoutcraft.client.physics.snapshot.PlayerSnapshot;
 import org.spoutcraft.client.universe.snapshot.ChunkSnapshot;
@@ -68,16 +80,43 @@ public class Interface extends TickingElement {
     private static final float TWO_PI = 2 * PI;
     private static final float LIGHT_ANGLE_LIMIT = PI / 64;
     private static final Vector3f SHADOWED_CHUNKS = new Vector3f(Chunk.BLOCKS.SIZE * 4, 64, Chunk.BLOCKS.SIZE * 4);
-    private static final Vector3f[] CHUNK_VERTICES;
     private static final float MOUSE_SENSITIVITY = 0.08f;
+    private static final int PRIORITIES_UPDATE_TICKS = TPS / 4;
+    // Processors left to the render and network threads by default, when choosing the meshing thread count
+    private static final int RESERVED_THREADS = 2;
+    // Default budget for uploading the completed chunk meshes each frame
+    private static final int UPLOAD_BUDGET_KB = 512;
+    private static final int UPLOAD_BUDGET_MS = 2;
+    // Default initial size of the chunk arena, 0 to disable it
+    private static final int ARENA_MB = 32;
     private final Game game;
     private final Renderer renderer = new Renderer();
     private final ParallelChunkMesher mesher;
+    private final int uploadBudgetBytes;
+    private final long uploadBudgetTime;
+    private final int arenaCapacity;
+    // Draws all the chunks, if the arena is used
+    private ChunkBatchModel chunkBatchModel;
     private final Map<Vector3i, ChunkModel> chunkModels = new HashMap<>();
     private long worldLastUpdateNumber;
+    private volatile boolean remeshChunks = false;
+    private Vector3i lastCameraChunk;
+    private int ticksSincePrioritiesUpdate = 0;
     private boolean lastUpdatePartial = false;
     private final TObjectLongMap<Vector3i> chunkLastUpdateNumbers = new TObjectLongHashMap<>();
-    private final ViewFrustum frustum = new ViewFrustum();
+    private final Frustum frustum = new Frustum();
+    // The chunk models by position, for culling them hierarchically, and those found visible on the last frame
+    private final ChunkColumnTree<ChunkModel> chunkModelTree = new ChunkColumnTree<>();
+    private final List<ChunkModel> visibleChunkModels = new ArrayList<>();
+    private final ConnectivityCuller<ChunkModel> connectivityCuller = new ConnectivityCuller<>(chunkModelTree, new ConnectivityProvider<ChunkModel>() {
+        @Override
+        public int getConnectivity(ChunkModel model) {
+            return model.getConnectivity();
+        }
+    });
+    private volatile boolean connectivityCulling = true;
+    private volatile boolean occlusionCulling = true;
+    private volatile int occlusionCulledCount = 0;
     private float cameraPitch = 0;
     private float cameraYaw = 0;
     private int mouseX = 0;
@@ -85,18 +124,6 @@ public class Interface extends TickingElement {
     private boolean mouseGrabbed = false;
     private final CameraSnapshot cameraSnapshot = new CameraSnapshot();
 
-    static {
-        CHUNK_VERTICES = new Vector3f[8];
-        CHUNK_VERTICES[0] = new Vector3f(0, 0, Chunk.BLOCKS.SIZE);
-        CHUNK_VERTICES[1] = new Vector3f(Chunk.BLOCKS.SIZE, 0, Chunk.BLOCKS.SIZE);
-        CHUNK_VERTICES[2] = new Vector3f(Chunk.BLOCKS.SIZE, Chunk.BLOCKS.SIZE, Chunk.BLOCKS.SIZE);
-        CHUNK_VERTICES[3] = new Vector3f(0, Chunk.BLOCKS.SIZE, Chunk.BLOCKS.SIZE);
-        CHUNK_VERTICES[4] = new Vector3f(0, 0, 0);
-        CHUNK_VERTICES[5] = new Vector3f(Chunk.BLOCKS.SIZE, 0, 0);
-        CHUNK_VERTICES[6] = new Vector3f(Chunk.BLOCKS.SIZE, Chunk.BLOCKS.SIZE, 0);
-        CHUNK_VERTICES[7] = new Vector3f(0, Chunk.BLOCKS.SIZE, 0);
-    }
-
     /**
      * Constructs a new interface from the game.
      *
@@ -105,7 +132,16 @@ public class Interface extends TickingElement {
     public Interface(Game game) {
         super("interface", TPS);
         this.game = game;
-        mesher = new ParallelChunkMesher(this, new StandardChunkMesher());
+        final Configuration configuration = game.getConfiguration();
+        int meshingThreads = configuration.getInt("meshing.threads", 0);
+        if (meshingThreads <= 0) {
+            meshingThreads = ParallelChunkMesher.getDefaultThreadCount(configuration.getInt("meshing.reserved_threads", RESERVED_THREADS));
+        }
+        final boolean greedy = "greedy".equalsIgnoreCase(configuration.getString("meshing.mesher", "standard"));
+        mesher = new ParallelChunkMesher(this, greedy ? new GreedyChunkMesher() : new StandardChunkMesher(), meshingThreads);
+        uploadBudgetBytes = configuration.getInt("meshing.upload_budget_kb", UPLOAD_BUDGET_KB) * 1024;
+        uploadBudgetTime = TimeUnit.MILLISECONDS.toNanos(configuration.getInt("meshing.upload_budget_ms", UPLOAD_BUDGET_MS));
+        arenaCapacity = configuration.getInt("meshing.arena_mb", ARENA_MB) * 1024 * 1024;
     }
 
     @Override
@@ -114,6 +150,11 @@ public class Interface extends TickingElement {
         // Initialize the renderer
         renderer.setGLVersion(GLVersion.GL32);
         renderer.init();
+        // Draw the chunks all at once from a shared buffer, if enabled
+        if (arenaCapacity > 0 && renderer.getGLVersion() == GLVersion.GL32) {
+            chunkBatchModel = mesher.createArena(arenaCapacity);
+            renderer.addChunkBatchModel(chunkBatchModel);
+        }
         // Subscribe to the keyboard input queue
         final Input input = game.getInput();
         input.subscribeToKeyboard();
@@ -125,8 +166,14 @@ public class Interface extends TickingElement {
     public void onTick(long dt) {
         handleInput(dt / 1000000000f);
         final WorldSnapshot world = game.getUniverse().getActiveWorldSnapshot();
+        updateMeshingPriorities();
         updateChunkModels(world);
+        cullChunkModels();
         updateLight(world.getTime());
+        mesher.uploadMeshes(uploadBudgetBytes, uploadBudgetTime);
+        if (chunkBatchModel != null) {
+            chunkBatchModel.update(visibleChunkModels);
+        }
         renderer.render();
         updateSnapshots();
     }
@@ -136,9 +183,9 @@ public class Interface extends TickingElement {
         game.getLogger().info("Stopping interface");
         // We make sure to stop the input because it relies on the display
         game.getInput().stop();
-        mesher.shutdown();
-        // Updating with a null world will clear all models
+        // Updating with a null world will clear all models, returning their vertex arrays to the mesher's pool
         updateChunkModels(null);
+        mesher.shutdown();
         renderer.dispose();
     }
 
@@ -158,7 +205,74 @@ public class Interface extends TickingElement {
         // TODO: lower light intensity at night
     }
 
+    private void updateMeshingPriorities() {
+        // Reorder the pending meshing when the camera enters another chunk, or periodically for the rotations
+        final Vector3i cameraChunk = renderer.getRenderModelsNode().getCamera().getPosition().div(Chunk.BLOCKS.SIZE).floor().toInt();
+        if (!cameraChunk.equals(lastCameraChunk) || ++ticksSincePrioritiesUpdate >= PRIORITIES_UPDATE_TICKS) {
+            if (mesher.getPendingCount() > 0) {
+                mesher.updatePriorities();
+            }
+            lastCameraChunk = cameraChunk;
+            ticksSincePrioritiesUpdate = 0;
+        }
+    }
+
+    private void cullChunkModels() {
+        // Hide the models visible on the last frame, then find and show the currently visible ones
+        for (ChunkModel model : visibleChunkModels) {
+            model.setVisible(false);
+        }
+        visibleChunkModels.clear();
+        chunkModelTree.cull(frustum, visibleChunkModels);
+        if (connectivityCulling) {
+            cullOccludedChunkModels();
+        }
+        cullQueriedChunkModels();
+        for (ChunkModel model : visibleChunkModels) {
+            model.setVisible(true);
+        }
+    }
+
+    private void cullQueriedChunkModels() {
+        final OcclusionCullingNode occlusionCullingNode = renderer.getOcclusionCullingNode();
+        if (occlusionCullingNode == null) {
+            return;
+        }
+        if (!occlusionCulling) {
+            // This will delete the queries
+            occlusionCullingNode.setCandidates(Collections.<ChunkModel>emptyList());
+            occlusionCulledCount = 0;
+            return;
+        }
+        // The results are from the previous frames, the hidden models are tested again on this one so they can reappear on the next
+        occlusionCullingNode.updateResults();
+        occlusionCullingNode.setCandidates(visibleChunkModels);
+        // Compact the visible models in place, removing the occluded ones
+        final int count = visibleChunkModels.size();
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            final ChunkModel model = visibleChunkModels.get(i);
+            if (!occlusionCullingNode.isOccluded(model)) {
+                visibleChunkModels.set(kept++, model);
+            }
+        }
+        visibleChunkModels.subList(kept, count).clear();
+        occlusionCulledCount = count - kept;
+    }
+
+    private void cullOccludedChunkModels() {
+        final Vector3i cameraChunk = renderer.getRenderModelsNode().getCamera().getPosition().div(Chunk.BLOCKS.SIZE).floor().toInt();
+        // Outside of the loaded chunks, this keeps the frustum culling only
+        connectivityCuller.cull(frustum, cameraChunk.getX(), cameraChunk.getY(), cameraChunk.getZ(), visibleChunkModels);
+    }
+
     private void updateChunkModels(WorldSnapshot world) {
+        // If the mesher has changed, forget the update numbers so all the chunks get meshed again
+        if (remeshChunks) {
+            remeshChunks = false;
+            chunkLastUpdateNumbers.clear();
+            worldLastUpdateNumber = 0;
+        }
         // If we have no world, remove all chunks
         if (world == null) {
             for (ChunkModel model : chunkModels.values()) {
@@ -166,6 +280,7 @@ public class Interface extends TickingElement {
                 removeChunkModel(model, true);
             }
             chunkModels.clear();
+            chunkModelTree.clear();
             chunkLastUpdateNumbers.clear();
             worldLastUpdateNumber = 0;
             lastUpdatePartial = false;
@@ -192,6 +307,7 @@ public class Interface extends TickingElement {
                 removeChunkModel(model, true);
                 // Finally, remove the chunk from the collections
                 iterator.remove();
+                chunkModelTree.remove(position);
                 chunkLastUpdateNumbers.remove(position);
             }
         }
@@ -212,7 +328,7 @@ public class Interface extends TickingElement {
             // If the chunk model is out of date
             if (newChunk.getUpdateNumber() > chunkLastUpdateNumbers.get(newChunk.getPosition())) {
                 // If it's not visible, skip it, and mark that we skipped at least one chunk
-                if (!isChunkVisible(newChunk.getPosition())) {
+                if (!isChunkVisible(newChunk.getPosition().mul(Chunk.BLOCKS.SIZE))) {
                     skippedChunk = true;
                     continue;
                 }
@@ -233,22 +349,24 @@ public class Interface extends TickingElement {
     }
 
     private void addChunkModel(ChunkSnapshot chunk, ChunkModel previous) {
-        final ChunkModel model = mesher.queue(chunk);
+        // The previous model is kept to prevent frames with missing chunks because they're being meshed
+        final ChunkModel model = mesher.queue(chunk, previous);
         final Vector3i position = chunk.getPosition();
         model.setPosition(position.mul(16).toFloat());
         model.setRotation(Quaternionf.IDENTITY);
-        // The previous model is kept to prevent frames with missing chunks because they're being meshed
-        model.setPrevious(previous);
-        renderer.addSolidModel(model);
+        if (chunkBatchModel == null) {
+            renderer.addChunkModel(model);
+        }
         chunkModels.put(position, model);
-        chunkLastUpdateNumbers.put(position, chunk.getUpdateNumber());
+        chunkModelTree.put(position, model);
+        chunkLastUpdateNumbers.put(position, model.getUpdateNumber());
         game.getLogger().info("Updated chunk model: " + position);
     }
 
     private void removeChunkModel(ChunkModel model, boolean destroy) {
         renderer.getRenderModelsNode().removeModel(model);
         if (destroy) {
-            // TODO: recycle the vertex array?
+            // The vertex array is recycled by the mesher
             model.destroy();
         }
     }
@@ -346,6 +464,81 @@ public class Interface extends TickingElement {
         return renderer;
     }
 
+    /**
+     * Returns the parallel chunk mesher, which runs the meshing tasks and tracks their metrics.
+     *
+     * @return The parallel chunk mesher
+     */
+    public ParallelChunkMesher getParallelChunkMesher() {
+        return mesher;
+    }
+
+    /**
+     * Returns the chunk mesher used to create the chunk models.
+     *
+     * @return The chunk mesher
+     */
+    public ChunkMesher getChunkMesher() {
+        return mesher.getMesher();
+    }
+
+    /**
+     * Sets the chunk mesher used to create the chunk models. All the chunks will be meshed again with the new mesher, the current models being rendered until the new ones are ready. Can be called
+     * from any thread.
+     *
+     * @param chunkMesher The chunk mesher
+     */
+    public void setChunkMesher(ChunkMesher chunkMesher) {
+        mesher.setMesher(chunkMesher);
+        remeshChunks = true;
+    }
+
+    /**
+     * Returns true if the chunks hidden behind others are culled, using the connectivity of their faces, in addition to the frustum culling.
+     *
+     * @return Whether or not the connectivity culling is enabled
+     */
+    public boolean isConnectivityCulling() {
+        return connectivityCulling;
+    }
+
+    /**
+     * Sets whether or not the chunks hidden behind others are culled, using the connectivity of their faces, in addition to the frustum culling. Can be called from any thread.
+     *
+     * @param culling Whether or not the connectivity culling should be enabled
+     */
+    public void setConnectivityCulling(boolean culling) {
+        connectivityCulling = culling;
+    }
+
+    /**
+     * Returns true if the chunks hidden behind others are culled using hardware occlusion queries, in addition to the other culling. Only supported with OpenGL 3.2, the results lag one frame
+     * behind.
+     *
+     * @return Whether or not the occlusion culling is enabled
+     */
+    public boolean isOcclusionCulling() {
+        return occlusionCulling;
+    }
+
+    /**
+     * Sets whether or not the chunks hidden behind others are culled using hardware occlusion queries, in addition to the other culling. Can be called from any thread.
+     *
+     * @param culling Whether or not the occlusion culling should be enabled
+     */
+    public void setOcclusionCulling(boolean culling) {
+        occlusionCulling = culling;
+    }
+
+    /**
+     * Returns the number of chunks culled by the occlusion queries on the last frame, after the frustum and connectivity culling.
+     *
+     * @return The number of chunks culled by the occlusion queries
+     */
+    public int getOcclusionCulledCount() {
+        return occlusionCulledCount;
+    }
+
     /**
      * Returns true if the chunk is visible, using the default chunk size and the position in world coordinates.
      *
@@ -353,7 +546,7 @@ public class Interface extends TickingElement {
      * @return Whether or not the chunk is visible
      */
     public boolean isChunkVisible(Vector3i position) {
-        return frustum.intersectsCuboid(CHUNK_VERTICES, position.getX(), position.getY(), position.getZ());
+        return isChunkVisible(position.getX(), position.getY(), position.getZ());
     }
 
     /**
@@ -363,7 +556,10 @@ public class Interface extends TickingElement {
      * @return Whether or not the chunk is visible
      */
     public boolean isChunkVisible(Vector3f position) {
+        return isChunkVisible(position.getX(), position.getY(), position.getZ());
+    }
 
-        return frustum.intersectsCuboid(CHUNK_VERTICES, position);
+    private boolean isChunkVisible(float x, float y, float z) {
+        return frustum.isBoxVisible(x, y, z, x + Chunk.BLOCKS.SIZE, y + Chunk.BLOCKS.SIZE, z + Chunk.BLOCKS.SIZE);
     }
 }
@@ -0,0 +1,294 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.nterface.culling;
+
+import java.util.Collection;
+
+import com.flowpowered.math.vector.Vector3i;
+
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.procedure.TIntObjectProcedure;
+import gnu.trove.procedure.TObjectProcedure;
+
+import org.spoutcraft.client.nterface.culling.Frustum.Intersection;
+import org.spoutcraft.client.universe.world.Chunk;
+
+/**
+ * A quadtree over chunk columns, holding one element per chunk, for culling. The columns are grouped in square regions, each the root of a quadtree down to single columns, which hold the elements
+ * by chunk y coordinate. Every node knows the vertical extent of its chunks, so it can be tested against the frustum as a box: nodes outside are skipped entirely, and all the chunks of nodes
+ * inside are accepted without further tests. Only the nodes crossing the frustum's planes are subdivided, so the number of tests grows with the frustum's surface rather than the number of chunks.
+ * Not thread safe.
+ *
+ * @param <T> The type of the elements
+ */
+public class ChunkColumnTree<T> {
+    // Each region is 32 by 32 columns
+    private static final int REGION_BITS = 5;
+    private static final int REGION_SIZE = 1 << REGION_BITS;
+    private final TLongObjectMap<Node<T>> regions = new TLongObjectHashMap<>();
+    // Reused by every cull, so the maps are iterated without allocating views or iterators
+    private final Culler<T> culler = new Culler<>();
+    private int size = 0;
+
+    /**
+     * Puts the element at the chunk position, replacing the previous one, if any.
+     *
+     * @param position The chunk position
+     * @param element The element
+     * @return The previous element, or null if none
+     */
+    public T put(Vector3i position, T element) {
+        final int regionX = position.getX() >> REGION_BITS;
+        final int regionZ = position.getZ() >> REGION_BITS;
+        final long key = getKey(regionX, regionZ);
+        Node<T> region = regions.get(key);
+        if (region == null) {
+            region = new Node<>(regionX << REGION_BITS, regionZ << REGION_BITS, REGION_SIZE);
+            regions.put(key, region);
+        }
+        final T previous = region.put(position.getX(), position.getY(), position.getZ(), element);
+        if (previous == null) {
+            size++;
+        }
+        return previous;
+    }
+
+    /**
+     * Removes the element at the chunk position.
+     *
+     * @param position The chunk position
+     * @return The removed element, or null if none
+     */
+    public T remove(Vector3i position) {
+        final long key = getKey(position.getX() >> REGION_BITS, position.getZ() >> REGION_BITS);
+        final Node<T> region = regions.get(key);
+        if (region == null) {
+            return null;
+        }
+        final T removed = region.remove(position.getX(), position.getY(), position.getZ());
+        if (removed != null) {
+            size--;
+            if (region.count == 0) {
+                regions.remove(key);
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Returns the element at the chunk position.
+     *
+     * @param x The chunk x coordinate
+     * @param y The chunk y coordinate
+     * @param z The chunk z coordinate
+     * @return The element, or null if none
+     */
+    public T get(int x, int y, int z) {
+        final Node<T> column = getColumn(x, z);
+        return column != null ? column.column.get(y) : null;
+    }
+
+    /**
+     * Returns true if there's at least one element in the column of chunks.
+     *
+     * @param x The chunk x coordinate of the column
+     * @param z The chunk z coordinate of the column
+     * @return Whether or not the column has elements
+     */
+    public boolean hasColumn(int x, int z) {
+        return getColumn(x, z) != null;
+    }
+
+    private Node<T> getColumn(int x, int z) {
+        Node<T> node = regions.get(getKey(x >> REGION_BITS, z >> REGION_BITS));
+        while (node != null && node.column == null) {
+            final int half = node.size >> 1;
+            node = node.children[(x - node.x >= half ? 1 : 0) + (z - node.z >= half ? 2 : 0)];
+        }
+        return node;
+    }
+
+    /**
+     * Removes all the elements.
+     */
+    public void clear() {
+        regions.clear();
+        size = 0;
+    }
+
+    /**
+     * Returns the number of elements.
+     *
+     * @return The element count
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Adds the elements whose chunk is at least partially inside the frustum to the collection.
+     *
+     * @param frustum The frustum to test against
+     * @param visible The collection to add the visible elements to
+     */
+    public void cull(Frustum frustum, Collection<T> visible) {
+        culler.frustum = frustum;
+        culler.visible = visible;
+        try {
+            regions.forEachValue(culler);
+        } finally {
+            culler.frustum = null;
+            culler.visible = null;
+        }
+    }
+
+    private static long getKey(int regionX, int regionZ) {
+        return (long) regionX << 32 | regionZ & 0xffffffffL;
+    }
+
+    private static class Node<T> {
+        // Position and size in columns
+        private final int x;
+        private final int z;
+        private final int size;
+        // The chunk y range of the elements, only grown while the node isn't empty, which keeps it conservative
+        private int minY = Integer.MAX_VALUE;
+        private int maxY = Integer.MIN_VALUE;
+        private int count = 0;
+        // Quadrants for inner nodes, indexed by x half + z half * 2
+        private final Node<T>[] children;
+        // Elements by chunk y for single columns
+        private final TIntObjectMap<T> column;
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private Node(int x, int z, int size) {
+            this.x = x;
+            this.z = z;
+            this.size = size;
+            if (size > 1) {
+                children = new Node[4];
+                column = null;
+            } else {
+                children = null;
+                column = new TIntObjectHashMap<>();
+            }
+        }
+
+        private T put(int cx, int cy, int cz, T element) {
+            final T previous;
+            if (column != null) {
+                previous = column.put(cy, element);
+            } else {
+                final int half = size >> 1;
+                final int quadrant = (cx - x >= half ? 1 : 0) + (cz - z >= half ? 2 : 0);
+                Node<T> child = children[quadrant];
+                if (child == null) {
+                    child = new Node<>(x + (quadrant & 1) * half, z + (quadrant >> 1) * half, half);
+                    children[quadrant] = child;
+                }
+                previous = child.put(cx, cy, cz, element);
+            }
+            if (previous == null) {
+                count++;
+            }
+            minY = Math.min(minY, cy);
+            maxY = Math.max(maxY, cy);
+            return previous;
+        }
+
+        private T remove(int cx, int cy, int cz) {
+            final T removed;
+            if (column != null) {
+                removed = column.remove(cy);
+            } else {
+                final int half = size >> 1;
+                final int quadrant = (cx - x >= half ? 1 : 0) + (cz - z >= half ? 2 : 0);
+                final Node<T> child = children[quadrant];
+                if (child == null) {
+                    return null;
+                }
+                removed = child.remove(cx, cy, cz);
+                if (child.count == 0) {
+                    children[quadrant] = null;
+                }
+            }
+            if (removed != null && --count == 0) {
+                minY = Integer.MAX_VALUE;
+                maxY = Integer.MIN_VALUE;
+            }
+            return removed;
+        }
+
+        private void cull(Culler<T> culler, boolean inside) {
+            final Frustum frustum = culler.frustum;
+            if (!inside) {
+                final Intersection intersection = frustum.intersectsBox(x * Chunk.BLOCKS.SIZE, minY * Chunk.BLOCKS.SIZE, z * Chunk.BLOCKS.SIZE,
+                        (x + size) * Chunk.BLOCKS.SIZE, (maxY + 1) * Chunk.BLOCKS.SIZE, (z + size) * Chunk.BLOCKS.SIZE);
+                if (intersection == Intersection.OUTSIDE) {
+                    return;
+                }
+                inside = intersection == Intersection.INSIDE;
+            }
+            if (column != null) {
+                culler.columnInside = inside;
+                culler.columnX = x * Chunk.BLOCKS.SIZE;
+                culler.columnZ = z * Chunk.BLOCKS.SIZE;
+                column.forEachEntry(culler);
+            } else {
+                for (Node<T> child : children) {
+                    if (child != null) {
+                        child.cull(culler, inside);
+                    }
+                }
+            }
+        }
+    }
+
+    // Culls the regions, then the chunks of each column reached, testing them individually unless the whole column is inside
+    private static class Culler<T> implements TObjectProcedure<Node<T>>, TIntObjectProcedure<T> {
+        private Frustum frustum;
+        private Collection<T> visible;
+        private boolean columnInside;
+        private float columnX;
+        private float columnZ;
+
+        @Override
+        public boolean execute(Node<T> region) {
+            region.cull(this, false);
+            return true;
+        }
+
+        @Override
+        public boolean execute(int cy, T element) {
+            final float minY = cy * Chunk.BLOCKS.SIZE;
+            if (columnInside || frustum.isBoxVisible(columnX, minY, columnZ, columnX + Chunk.BLOCKS.SIZE, minY + Chunk.BLOCKS.SIZE, columnZ + Chunk.BLOCKS.SIZE)) {
+                visible.add(element);
+            }
+            return true;
+        }
+    }
+}
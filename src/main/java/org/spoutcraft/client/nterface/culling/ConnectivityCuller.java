@@ -0,0 +1,173 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.nterface.culling;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
+
+import org.spoutcraft.client.nterface.mesh.ChunkConnectivity;
+import org.spoutcraft.client.universe.block.BlockFace;
+import org.spoutcraft.client.universe.block.BlockFaces;
+import org.spoutcraft.client.universe.world.Chunk;
+import org.spoutcraft.client.universe.world.ChunkColumn;
+import org.spoutcraft.client.universe.world.ChunkMap;
+
+/**
+ * Culls the chunks hidden behind others, such as caves, using the connectivity of their faces (see {@link org.spoutcraft.client.nterface.mesh.ChunkConnectivity}). The chunks are walked breadth
+ * first from the camera's, only going through faces connected to the one the chunk was entered from, and always away from the camera. Only the chunks already in the view frustum are walked.
+ * <p/>
+ * Sections missing from a loaded column have no element, since the server doesn't send the empty ones, but they must still be walked through to reach the chunks behind them. They're treated as
+ * empty chunks, with all their faces connected, when in the view frustum. This includes the sections above and below the world, down to the bottom and up to the camera.
+ *
+ * @param <T> The type of the chunk elements
+ */
+public class ConnectivityCuller<T> {
+    private final ChunkColumnTree<T> chunks;
+    private final ConnectivityProvider<T> connectivity;
+    // Reused for each walk
+    private final Set<T> candidates = Collections.newSetFromMap(new IdentityHashMap<T, Boolean>());
+    private final TLongSet reached = new TLongHashSet();
+    private final Queue<Visit<T>> visits = new ArrayDeque<>();
+
+    /**
+     * Constructs a new connectivity culler for the chunks.
+     *
+     * @param chunks The chunk elements by position
+     * @param connectivity Provides the connectivity of the chunk elements
+     */
+    public ConnectivityCuller(ChunkColumnTree<T> chunks, ConnectivityProvider<T> connectivity) {
+        this.chunks = chunks;
+        this.connectivity = connectivity;
+    }
+
+    /**
+     * Removes the hidden chunks from the visible ones. If the camera isn't in a loaded column, the chunks are left as is.
+     *
+     * @param frustum The view frustum, for the missing sections
+     * @param cameraX The chunk x coordinate of the camera
+     * @param cameraY The chunk y coordinate of the camera
+     * @param cameraZ The chunk z coordinate of the camera
+     * @param visible The chunks in the view frustum, only the ones reached from the camera are kept
+     * @return Whether or not the chunks were culled
+     */
+    public boolean cull(Frustum frustum, int cameraX, int cameraY, int cameraZ, List<T> visible) {
+        if (!chunks.hasColumn(cameraX, cameraZ)) {
+            return false;
+        }
+        // Missing sections are only walked through between the bottom of the world and the top, or the camera if higher
+        final int minY = Math.min(0, cameraY);
+        final int maxY = Math.max(ChunkColumn.HEIGHT - 1, cameraY);
+        candidates.addAll(visible);
+        visible.clear();
+        reached.add(ChunkMap.key(cameraX, cameraY, cameraZ));
+        visits.add(new Visit<>(cameraX, cameraY, cameraZ, chunks.get(cameraX, cameraY, cameraZ), null, 0));
+        while (!visits.isEmpty()) {
+            final Visit<T> visit = visits.poll();
+            final int connections;
+            if (visit.chunk != null) {
+                visible.add(visit.chunk);
+                connections = connectivity.getConnectivity(visit.chunk);
+            } else {
+                connections = ChunkConnectivity.ALL;
+            }
+            for (BlockFace face : BlockFaces.NESWBT) {
+                // Going back towards the camera can't reveal anything new
+                if ((visit.directions & 1 << face.getOpposite().ordinal()) != 0) {
+                    continue;
+                }
+                if (visit.entry != null && !ChunkConnectivity.isConnected(connections, visit.entry, face)) {
+                    continue;
+                }
+                final int x = visit.x + face.getOffset().getX();
+                final int y = visit.y + face.getOffset().getY();
+                final int z = visit.z + face.getOffset().getZ();
+                final T chunk = chunks.get(x, y, z);
+                if (chunk != null) {
+                    if (!candidates.contains(chunk)) {
+                        continue;
+                    }
+                } else if (y < minY || y > maxY || !chunks.hasColumn(x, z) || !isSectionVisible(frustum, x, y, z)) {
+                    continue;
+                }
+                if (!reached.add(ChunkMap.key(x, y, z))) {
+                    continue;
+                }
+                visits.add(new Visit<>(x, y, z, chunk, face.getOpposite(), visit.directions | 1 << face.ordinal()));
+            }
+        }
+        candidates.clear();
+        reached.clear();
+        return true;
+    }
+
+    private static boolean isSectionVisible(Frustum frustum, int x, int y, int z) {
+        final float minX = x * Chunk.BLOCKS.SIZE;
+        final float minY = y * Chunk.BLOCKS.SIZE;
+        final float minZ = z * Chunk.BLOCKS.SIZE;
+        return frustum.isBoxVisible(minX, minY, minZ, minX + Chunk.BLOCKS.SIZE, minY + Chunk.BLOCKS.SIZE, minZ + Chunk.BLOCKS.SIZE);
+    }
+
+    /**
+     * Provides the connectivity of the chunk elements.
+     *
+     * @param <T> The type of the chunk elements
+     */
+    public static interface ConnectivityProvider<T> {
+        /**
+         * Returns the connectivity of the chunk's faces, see {@link org.spoutcraft.client.nterface.mesh.ChunkConnectivity}.
+         *
+         * @param chunk The chunk element
+         * @return The chunk connectivity
+         */
+        public int getConnectivity(T chunk);
+    }
+
+    private static class Visit<T> {
+        private final int x;
+        private final int y;
+        private final int z;
+        // Null for missing sections
+        private final T chunk;
+        // The face the chunk was entered from, null for the camera's chunk
+        private final BlockFace entry;
+        // The directions taken from the camera's chunk, as bits indexed by face ordinal
+        private final int directions;
+
+        private Visit(int x, int y, int z, T chunk, BlockFace entry, int directions) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.chunk = chunk;
+            this.entry = entry;
+            this.directions = directions;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.nterface.culling;
+
+import com.flowpowered.math.matrix.Matrix4f;
+
+/**
+ * A view frustum made of six planes, extracted from the combined projection and view matrices using the Gribb-Hartmann method. Boxes are tested against each plane using only their corner closest
+ * to the plane's normal and the opposite one, instead of all eight corners. The result also tells if a box is fully inside the frustum, so the contents of a box that is don't need to be tested.
+ */
+public class Frustum {
+    // Six planes, as the normal components followed by the distance. Points with a positive distance are inside
+    private final float[] planes = new float[24];
+
+    /**
+     * Updates the frustum planes from the camera matrices.
+     *
+     * @param projection The projection matrix
+     * @param view The view matrix
+     */
+    public void update(Matrix4f projection, Matrix4f view) {
+        final Matrix4f clip = projection.mul(view);
+        // Left, right, bottom, top, near and far: the fourth row plus or minus each of the first three
+        for (int i = 0; i < 6; i++) {
+            final int row = i >> 1;
+            final float sign = (i & 1) == 0 ? 1 : -1;
+            for (int column = 0; column < 4; column++) {
+                planes[i * 4 + column] = clip.get(3, column) + sign * clip.get(row, column);
+            }
+        }
+    }
+
+    /**
+     * Tests the axis aligned box against the frustum.
+     *
+     * @param minX The minimum x coordinate of the box
+     * @param minY The minimum y coordinate of the box
+     * @param minZ The minimum z coordinate of the box
+     * @param maxX The maximum x coordinate of the box
+     * @param maxY The maximum y coordinate of the box
+     * @param maxZ The maximum z coordinate of the box
+     * @return Whether the box is outside, intersecting or inside the frustum
+     */
+    public Intersection intersectsBox(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        Intersection intersection = Intersection.INSIDE;
+        for (int i = 0; i < 24; i += 4) {
+            final float a = planes[i];
+            final float b = planes[i + 1];
+            final float c = planes[i + 2];
+            final float d = planes[i + 3];
+            // The corner furthest along the normal, if it's behind the plane the whole box is
+            if (a * (a >= 0 ? maxX : minX) + b * (b >= 0 ? maxY : minY) + c * (c >= 0 ? maxZ : minZ) + d < 0) {
+                return Intersection.OUTSIDE;
+            }
+            // The opposite corner, if it's behind the plane the box crosses it
+            if (a * (a >= 0 ? minX : maxX) + b * (b >= 0 ? minY : maxY) + c * (c >= 0 ? minZ : maxZ) + d < 0) {
+                intersection = Intersection.INTERSECTING;
+            }
+        }
+        return intersection;
+    }
+
+    /**
+     * Returns true if the axis aligned box is at least partially inside the frustum.
+     *
+     * @param minX The minimum x coordinate of the box
+     * @param minY The minimum y coordinate of the box
+     * @param minZ The minimum z coordinate of the box
+     * @param maxX The maximum x coordinate of the box
+     * @param maxY The maximum y coordinate of the box
+     * @param maxZ The maximum z coordinate of the box
+     * @return Whether or not the box is visible
+     */
+    public boolean isBoxVisible(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        return intersectsBox(minX, minY, minZ, maxX, maxY, maxZ) != Intersection.OUTSIDE;
+    }
+
+    /**
+     * The result of an intersection test between a box and the frustum.
+     */
+    public enum Intersection {
+        OUTSIDE,
+        INTERSECTING,
+        INSIDE
+    }
+}
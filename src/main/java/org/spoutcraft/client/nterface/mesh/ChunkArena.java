@@ -0,0 +1,425 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.nterface.mesh;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import com.flowpowered.math.vector.Vector3f;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.ContextCapabilities;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL13;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL31;
+import org.lwjgl.opengl.GL32;
+import org.lwjgl.opengl.GL40;
+import org.lwjgl.opengl.GL43;
+import org.lwjgl.opengl.GLContext;
+
+/**
+ * A single vertex buffer shared by all the chunk meshes, which are sub-allocated from it, so that all the visible chunks can be drawn with one vertex array bound and, if supported, one draw call.
+ * The vertices use the same packed format as {@link org.spoutcraft.client.nterface.mesh.ChunkVertexArray}, and the indices come from the shared {@link
+ * org.spoutcraft.client.nterface.mesh.QuadIndexBuffer}, offset by the base vertex of each mesh.
+ * <p/>
+ * The buffer is divided in blocks of {@link #BLOCK_VERTICES} vertices, and each mesh takes a contiguous range of blocks, the smallest free one it fits in. The chunk position of every block is
+ * stored in a texture buffer, which the shader reads using the block of the vertex ID, since the vertex ID includes the base vertex. This means the meshes don't need any per draw uniform. The
+ * buffer grows when full, by copying its contents to a larger one. Freed blocks are only reused after {@link org.spoutcraft.client.nterface.mesh.ChunkVertexArrayPool#RETIRE_FRAMES} frames, so a
+ * new mesh is never written to blocks the GPU could still be drawing. Call {@link #nextFrame()} once per frame.
+ * <p/>
+ * The meshes to draw are set once per frame with {@link #clearDraws()}, {@link #addDraw(org.spoutcraft.client.nterface.mesh.ChunkArena.Allocation)} and {@link #uploadDraws()}, then drawn by each
+ * pass with {@link #draw()}. When multi draw indirect is supported, the draws are uploaded as commands and drawn in a single call. Else, they're drawn one by one, but without any state change in
+ * between. Requires OpenGL 3.2 or later, and must only be used from the render thread.
+ */
+public class ChunkArena {
+    /**
+     * The number of vertices in a block, the allocation unit. Must match the chunk batch shader.
+     */
+    public static final int BLOCK_VERTICES = 256;
+    private static final int BLOCK_SIZE = BLOCK_VERTICES * ChunkMeshBuffer.VERTEX_SIZE;
+    private static final int MAX_MESH_BLOCKS = (ChunkMeshBuffer.MAX_QUADS * 4 + BLOCK_VERTICES - 1) / BLOCK_VERTICES;
+    // One RGBA32F texel per block, with the chunk position
+    private static final int OFFSET_SIZE = 4 * 4;
+    // Count, instance count, first index, base vertex and base instance
+    private static final int COMMAND_INTS = 5;
+    private final QuadIndexBuffer indices;
+    private int id = 0;
+    private int vertexBuffer = 0;
+    private int offsetBuffer = 0;
+    private int offsetTexture = 0;
+    private int commandBuffer = 0;
+    private boolean indirect;
+    private int blockCount = 0;
+    private int usedBlocks = 0;
+    // The free ranges of blocks, by start for merging them, and by size then start for finding the smallest that fits
+    private final TreeMap<Integer, Integer> freeByStart = new TreeMap<>();
+    private final TreeSet<Long> freeBySize = new TreeSet<>();
+    // The allocations freed in each of the last frames, indexed by frame modulo the retire frame count
+    private final List<List<Allocation>> retired = new ArrayList<>();
+    private int frame = 0;
+    private final FloatBuffer offsets = BufferUtils.createFloatBuffer(MAX_MESH_BLOCKS * 4);
+    private IntBuffer commands = BufferUtils.createIntBuffer(256 * COMMAND_INTS);
+    private int drawCount = 0;
+
+    /**
+     * Constructs a new arena using the shared quad index buffer. The index buffer is created with the arena if necessary.
+     *
+     * @param indices The shared quad index buffer
+     */
+    public ChunkArena(QuadIndexBuffer indices) {
+        this.indices = indices;
+        for (int i = 0; i < ChunkVertexArrayPool.RETIRE_FRAMES; i++) {
+            retired.add(new ArrayList<Allocation>());
+        }
+    }
+
+    /**
+     * Creates the arena with an initial capacity, which is rounded up to a whole number of blocks.
+     *
+     * @param capacity The initial capacity, in bytes
+     */
+    public void create(int capacity) {
+        if (isCreated()) {
+            throw new IllegalStateException("Chunk arena has already been created");
+        }
+        if (!indices.isCreated()) {
+            indices.create();
+        }
+        blockCount = Math.max(MAX_MESH_BLOCKS, (capacity + BLOCK_SIZE - 1) / BLOCK_SIZE);
+        id = GL30.glGenVertexArrays();
+        vertexBuffer = GL15.glGenBuffers();
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vertexBuffer);
+        GL15.glBufferData(GL15.GL_ARRAY_BUFFER, blockCount * BLOCK_SIZE, GL15.GL_DYNAMIC_DRAW);
+        bindVertexBuffer();
+        // The chunk positions, read by the shader as a texture buffer
+        offsetBuffer = GL15.glGenBuffers();
+        GL15.glBindBuffer(GL31.GL_TEXTURE_BUFFER, offsetBuffer);
+        GL15.glBufferData(GL31.GL_TEXTURE_BUFFER, blockCount * OFFSET_SIZE, GL15.GL_DYNAMIC_DRAW);
+        GL15.glBindBuffer(GL31.GL_TEXTURE_BUFFER, 0);
+        offsetTexture = GL11.glGenTextures();
+        bindOffsetBuffer();
+        // Use indirect draws if available
+        final ContextCapabilities capabilities = GLContext.getCapabilities();
+        indirect = capabilities.OpenGL43 || capabilities.GL_ARB_multi_draw_indirect;
+        if (indirect) {
+            commandBuffer = GL15.glGenBuffers();
+        }
+        addFree(0, blockCount);
+    }
+
+    private void bindVertexBuffer() {
+        // Describe the integer attributes, the vertex buffer must be bound
+        GL30.glBindVertexArray(id);
+        GL20.glEnableVertexAttribArray(0);
+        GL30.glVertexAttribIPointer(0, 4, GL11.GL_UNSIGNED_BYTE, ChunkMeshBuffer.VERTEX_SIZE, 0);
+        GL20.glEnableVertexAttribArray(1);
+        GL30.glVertexAttribIPointer(1, 2, GL11.GL_UNSIGNED_SHORT, ChunkMeshBuffer.VERTEX_SIZE, ChunkMeshBuffer.MATERIAL_OFFSET);
+        // The index buffer binding is part of the vertex array state
+        indices.bind();
+        GL30.glBindVertexArray(0);
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+        GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, 0);
+    }
+
+    private void bindOffsetBuffer() {
+        GL11.glBindTexture(GL31.GL_TEXTURE_BUFFER, offsetTexture);
+        GL31.glTexBuffer(GL31.GL_TEXTURE_BUFFER, GL30.GL_RGBA32F, offsetBuffer);
+        GL11.glBindTexture(GL31.GL_TEXTURE_BUFFER, 0);
+    }
+
+    /**
+     * Uploads the mesh to the arena, growing it if there isn't a free range large enough. The mesh buffer can be released afterwards.
+     *
+     * @param mesh The mesh to upload
+     * @param position The position of the chunk, the minimum corner in world coordinates
+     * @return The allocation, to draw and free the mesh
+     */
+    public Allocation allocate(ChunkMeshBuffer mesh, Vector3f position) {
+        checkCreated();
+        final int blocks = (mesh.getVertexCount() + BLOCK_VERTICES - 1) / BLOCK_VERTICES;
+        Long free = freeBySize.ceiling((long) blocks << 32);
+        if (free == null) {
+            grow(blocks);
+            free = freeBySize.ceiling((long) blocks << 32);
+        }
+        final int start = free.intValue();
+        final int length = (int) (free >>> 32);
+        removeFree(start, length);
+        if (length > blocks) {
+            addFree(start + blocks, length - blocks);
+        }
+        usedBlocks += blocks;
+        // Upload the vertices, then the chunk position for each block
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vertexBuffer);
+        GL15.glBufferSubData(GL15.GL_ARRAY_BUFFER, (long) start * BLOCK_SIZE, mesh.getVertices());
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+        offsets.clear();
+        for (int i = 0; i < blocks; i++) {
+            offsets.put(position.getX()).put(position.getY()).put(position.getZ()).put(0);
+        }
+        offsets.flip();
+        GL15.glBindBuffer(GL31.GL_TEXTURE_BUFFER, offsetBuffer);
+        GL15.glBufferSubData(GL31.GL_TEXTURE_BUFFER, (long) start * OFFSET_SIZE, offsets);
+        GL15.glBindBuffer(GL31.GL_TEXTURE_BUFFER, 0);
+        return new Allocation(start, blocks, QuadIndexBuffer.getIndexCount(mesh.getQuadCount()));
+    }
+
+    /**
+     * Frees the allocation so its blocks can be reused, once the frames that could still draw it are done. It must not be drawn afterwards.
+     *
+     * @param allocation The allocation to free
+     */
+    public void free(Allocation allocation) {
+        if (!isCreated()) {
+            return;
+        }
+        usedBlocks -= allocation.blocks;
+        retired.get(frame).add(allocation);
+    }
+
+    /**
+     * Starts a new frame, making the blocks of the allocations freed {@link org.spoutcraft.client.nterface.mesh.ChunkVertexArrayPool#RETIRE_FRAMES} frames ago available again. Should be called
+     * once per frame, before any mesh is allocated.
+     */
+    public void nextFrame() {
+        frame = (frame + 1) % ChunkVertexArrayPool.RETIRE_FRAMES;
+        final List<Allocation> expired = retired.get(frame);
+        for (Allocation allocation : expired) {
+            addFreeMerged(allocation.start, allocation.blocks);
+        }
+        expired.clear();
+    }
+
+    private void addFreeMerged(int start, int length) {
+        // Merge with the free ranges just before and after
+        final Entry<Integer, Integer> before = freeByStart.lowerEntry(start);
+        if (before != null && before.getKey() + before.getValue() == start) {
+            removeFree(before.getKey(), before.getValue());
+            start = before.getKey();
+            length += before.getValue();
+        }
+        final Integer after = freeByStart.get(start + length);
+        if (after != null) {
+            removeFree(start + length, after);
+            length += after;
+        }
+        addFree(start, length);
+    }
+
+    private void grow(int blocks) {
+        final int newBlockCount = Math.max(blockCount * 2, blockCount + blocks);
+        vertexBuffer = copyBuffer(vertexBuffer, blockCount * BLOCK_SIZE, newBlockCount * BLOCK_SIZE);
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vertexBuffer);
+        bindVertexBuffer();
+        offsetBuffer = copyBuffer(offsetBuffer, blockCount * OFFSET_SIZE, newBlockCount * OFFSET_SIZE);
+        bindOffsetBuffer();
+        // The new blocks are free, merge them with the last range if it's free too
+        addFreeMerged(blockCount, newBlockCount - blockCount);
+        blockCount = newBlockCount;
+    }
+
+    private static int copyBuffer(int buffer, int size, int newSize) {
+        final int newBuffer = GL15.glGenBuffers();
+        GL15.glBindBuffer(GL31.GL_COPY_WRITE_BUFFER, newBuffer);
+        GL15.glBufferData(GL31.GL_COPY_WRITE_BUFFER, newSize, GL15.GL_DYNAMIC_DRAW);
+        GL15.glBindBuffer(GL31.GL_COPY_READ_BUFFER, buffer);
+        GL31.glCopyBufferSubData(GL31.GL_COPY_READ_BUFFER, GL31.GL_COPY_WRITE_BUFFER, 0, 0, size);
+        GL15.glBindBuffer(GL31.GL_COPY_READ_BUFFER, 0);
+        GL15.glBindBuffer(GL31.GL_COPY_WRITE_BUFFER, 0);
+        GL15.glDeleteBuffers(buffer);
+        return newBuffer;
+    }
+
+    private void addFree(int start, int length) {
+        freeByStart.put(start, length);
+        freeBySize.add((long) length << 32 | start);
+    }
+
+    private void removeFree(int start, int length) {
+        freeByStart.remove(start);
+        freeBySize.remove((long) length << 32 | start);
+    }
+
+    /**
+     * Clears the meshes to draw, before adding the ones for the next frame.
+     */
+    public void clearDraws() {
+        commands.clear();
+        drawCount = 0;
+    }
+
+    /**
+     * Adds a mesh to draw on the next frame. Call {@link #uploadDraws()} once they're all added.
+     *
+     * @param allocation The allocation of the mesh
+     */
+    public void addDraw(Allocation allocation) {
+        if (commands.remaining() < COMMAND_INTS) {
+            final IntBuffer larger = BufferUtils.createIntBuffer(commands.capacity() * 2);
+            commands.flip();
+            larger.put(commands);
+            commands = larger;
+        }
+        commands.put(allocation.indexCount).put(1).put(0).put(allocation.start * BLOCK_VERTICES).put(0);
+        drawCount++;
+    }
+
+    /**
+     * Uploads the draw commands, if drawn indirectly. Must be called after the meshes to draw have been added, and before drawing.
+     */
+    public void uploadDraws() {
+        commands.flip();
+        if (indirect && drawCount > 0) {
+            GL15.glBindBuffer(GL40.GL_DRAW_INDIRECT_BUFFER, commandBuffer);
+            GL15.glBufferData(GL40.GL_DRAW_INDIRECT_BUFFER, commands, GL15.GL_STREAM_DRAW);
+            GL15.glBindBuffer(GL40.GL_DRAW_INDIRECT_BUFFER, 0);
+        }
+    }
+
+    /**
+     * Draws the meshes as triangles. The chunk positions are bound to the first texture unit.
+     */
+    public void draw() {
+        if (drawCount == 0) {
+            return;
+        }
+        GL30.glBindVertexArray(id);
+        GL13.glActiveTexture(GL13.GL_TEXTURE0);
+        GL11.glBindTexture(GL31.GL_TEXTURE_BUFFER, offsetTexture);
+        if (indirect) {
+            GL15.glBindBuffer(GL40.GL_DRAW_INDIRECT_BUFFER, commandBuffer);
+            GL43.glMultiDrawElementsIndirect(GL11.GL_TRIANGLES, QuadIndexBuffer.INDEX_TYPE, 0, drawCount, 0);
+            GL15.glBindBuffer(GL40.GL_DRAW_INDIRECT_BUFFER, 0);
+        } else {
+            for (int i = 0; i < drawCount * COMMAND_INTS; i += COMMAND_INTS) {
+                GL32.glDrawElementsBaseVertex(GL11.GL_TRIANGLES, commands.get(i), QuadIndexBuffer.INDEX_TYPE, 0, commands.get(i + 3));
+            }
+        }
+        GL11.glBindTexture(GL31.GL_TEXTURE_BUFFER, 0);
+        GL30.glBindVertexArray(0);
+    }
+
+    /**
+     * Deletes the arena's buffers and vertex array. The allocations become invalid.
+     */
+    public void destroy() {
+        if (!isCreated()) {
+            return;
+        }
+        GL30.glDeleteVertexArrays(id);
+        GL15.glDeleteBuffers(vertexBuffer);
+        GL11.glDeleteTextures(offsetTexture);
+        GL15.glDeleteBuffers(offsetBuffer);
+        if (commandBuffer != 0) {
+            GL15.glDeleteBuffers(commandBuffer);
+        }
+        id = 0;
+        vertexBuffer = 0;
+        offsetTexture = 0;
+        offsetBuffer = 0;
+        commandBuffer = 0;
+        blockCount = 0;
+        usedBlocks = 0;
+        freeByStart.clear();
+        freeBySize.clear();
+        for (List<Allocation> frameRetired : retired) {
+            frameRetired.clear();
+        }
+        clearDraws();
+    }
+
+    private void checkCreated() {
+        if (!isCreated()) {
+            throw new IllegalStateException("Chunk arena hasn't been created");
+        }
+    }
+
+    /**
+     * Returns true if the arena has been created and not destroyed yet.
+     *
+     * @return Whether or not the arena is created
+     */
+    public boolean isCreated() {
+        return id != 0;
+    }
+
+    /**
+     * Returns the capacity of the vertex buffer, in bytes.
+     *
+     * @return The capacity
+     */
+    public int getCapacity() {
+        return blockCount * BLOCK_SIZE;
+    }
+
+    /**
+     * Returns the size of the allocated blocks, in bytes. This includes the unused vertices at the end of the last block of each mesh.
+     *
+     * @return The allocated size
+     */
+    public int getAllocatedSize() {
+        return usedBlocks * BLOCK_SIZE;
+    }
+
+    /**
+     * Returns the number of meshes drawn on each pass, as set by the last {@link #uploadDraws()}.
+     *
+     * @return The number of meshes drawn
+     */
+    public int getDrawCount() {
+        return drawCount;
+    }
+
+    /**
+     * Returns true if the meshes are drawn in a single indirect draw call, false if they're drawn one by one.
+     *
+     * @return Whether or not the draws are indirect
+     */
+    public boolean isIndirect() {
+        return indirect;
+    }
+
+    /**
+     * A range of blocks allocated to a mesh.
+     */
+    public static class Allocation {
+        private final int start;
+        private final int blocks;
+        private final int indexCount;
+
+        private Allocation(int start, int blocks, int indexCount) {
+            this.start = start;
+            this.blocks = blocks;
+            this.indexCount = indexCount;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.nterface.mesh;
+
+import org.spoutcraft.client.universe.block.BlockFace;
+import org.spoutcraft.client.universe.world.Chunk;
+
+/**
+ * Computes which pairs of a chunk's faces are connected through non-opaque blocks, for culling the chunks that can't be seen through the others. There are 15 pairs of distinct faces, so the
+ * connectivity of a chunk fits in an int, with one bit per pair. Two faces are connected if a flood fill of the non-opaque blocks starting from one reaches the other. A chunk with fewer opaque blocks
+ * than the area of a face can't separate any two faces, so it's connected everywhere without filling.
+ */
+public class ChunkConnectivity {
+    /**
+     * No faces are connected, the chunk can't be seen through.
+     */
+    public static final int NONE = 0;
+    /**
+     * All the faces are connected to each other.
+     */
+    public static final int ALL = (1 << 15) - 1;
+    private static final int SIZE = Chunk.BLOCKS.SIZE;
+    private static final int LAST = SIZE - 1;
+    // The six faces with a normal are the first ones of the enum
+    private static final int FACE_COUNT = 6;
+    private static final int[][] PAIR_BITS = new int[FACE_COUNT][FACE_COUNT];
+
+    static {
+        int bit = 0;
+        for (int i = 0; i < FACE_COUNT; i++) {
+            for (int j = i + 1; j < FACE_COUNT; j++) {
+                PAIR_BITS[i][j] = PAIR_BITS[j][i] = 1 << bit++;
+            }
+        }
+    }
+
+    private ChunkConnectivity() {
+    }
+
+    /**
+     * Returns true if the connectivity has the two faces connected. A face isn't considered connected to itself.
+     *
+     * @param connectivity The connectivity of the chunk
+     * @param from The first face
+     * @param to The second face
+     * @return Whether or not the faces are connected
+     */
+    public static boolean isConnected(int connectivity, BlockFace from, BlockFace to) {
+        return (connectivity & PAIR_BITS[from.ordinal()][to.ordinal()]) != 0;
+    }
+
+    /**
+     * Computes the connectivity of the chunk in the occupancy grid. The scratch arrays come from the {@link org.spoutcraft.client.nterface.mesh.ChunkMeshContext} of the calling thread.
+     *
+     * @param grid The occupancy grid of the chunk
+     * @return The connectivity of the chunk
+     */
+    public static int compute(OccupancyGrid grid) {
+        final ChunkMeshContext context = ChunkMeshContext.get();
+        // One row of blocks along x for each y and z, the bits are set for the blocks that are opaque or already filled
+        final int[] filled = context.getFilledRows();
+        int opaqueCount = 0;
+        for (int yy = 0; yy < SIZE; yy++) {
+            for (int zz = 0; zz < SIZE; zz++) {
+                final int row = (int) (grid.getOpaque(yy, zz) >>> 1) & (1 << SIZE) - 1;
+                filled[yy * SIZE + zz] = row;
+                opaqueCount += Integer.bitCount(row);
+            }
+        }
+        if (opaqueCount < Chunk.BLOCKS.AREA) {
+            return ALL;
+        }
+        int connectivity = NONE;
+        final int[] queue = context.getFillQueue();
+        // Fill from every block on the edges of the chunk that hasn't been reached yet
+        for (int yy = 0; yy < SIZE; yy++) {
+            for (int zz = 0; zz < SIZE; zz++) {
+                final boolean edgeRow = yy == 0 || yy == LAST || zz == 0 || zz == LAST;
+                for (int xx = 0; xx < SIZE; xx += edgeRow ? 1 : LAST) {
+                    if ((filled[yy * SIZE + zz] & 1 << xx) != 0) {
+                        continue;
+                    }
+                    final int faces = fill(filled, queue, xx, yy, zz);
+                    for (int i = 0; i < FACE_COUNT; i++) {
+                        if ((faces & 1 << i) == 0) {
+                            continue;
+                        }
+                        for (int j = i + 1; j < FACE_COUNT; j++) {
+                            if ((faces & 1 << j) != 0) {
+                                connectivity |= PAIR_BITS[i][j];
+                            }
+                        }
+                    }
+                    if (connectivity == ALL) {
+                        return ALL;
+                    }
+                }
+            }
+        }
+        return connectivity;
+    }
+
+    // Fills the non-opaque blocks connected to the starting one, returning the faces reached as bits indexed by ordinal
+    private static int fill(int[] filled, int[] queue, int x, int y, int z) {
+        int head = 0;
+        int tail = 0;
+        filled[y * SIZE + z] |= 1 << x;
+        queue[tail++] = y << 8 | z << 4 | x;
+        int faces = 0;
+        while (head < tail) {
+            final int block = queue[head++];
+            final int xx = block & LAST;
+            final int zz = block >> 4 & LAST;
+            final int yy = block >> 8;
+            faces |= getEdgeFaces(xx, yy, zz);
+            // Visit the non-opaque neighbours in the chunk that weren't filled yet
+            if (xx > 0) {
+                tail = visit(filled, queue, tail, xx - 1, yy, zz);
+            }
+            if (xx < LAST) {
+                tail = visit(filled, queue, tail, xx + 1, yy, zz);
+            }
+            if (yy > 0) {
+                tail = visit(filled, queue, tail, xx, yy - 1, zz);
+            }
+            if (yy < LAST) {
+                tail = visit(filled, queue, tail, xx, yy + 1, zz);
+            }
+            if (zz > 0) {
+                tail = visit(filled, queue, tail, xx, yy, zz - 1);
+            }
+            if (zz < LAST) {
+                tail = visit(filled, queue, tail, xx, yy, zz + 1);
+            }
+        }
+        return faces;
+    }
+
+    private static int visit(int[] filled, int[] queue, int tail, int x, int y, int z) {
+        final int row = y * SIZE + z;
+        if ((filled[row] & 1 << x) != 0) {
+            return tail;
+        }
+        filled[row] |= 1 << x;
+        queue[tail] = y << 8 | z << 4 | x;
+        return tail + 1;
+    }
+
+    private static int getEdgeFaces(int x, int y, int z) {
+        int faces = 0;
+        if (x == 0) {
+            faces |= 1 << BlockFace.NORTH.ordinal();
+        } else if (x == LAST) {
+            faces |= 1 << BlockFace.SOUTH.ordinal();
+        }
+        if (y == 0) {
+            faces |= 1 << BlockFace.BOTTOM.ordinal();
+        } else if (y == LAST) {
+            faces |= 1 << BlockFace.TOP.ordinal();
+        }
+        if (z == 0) {
+            faces |= 1 << BlockFace.EAST.ordinal();
+        } else if (z == LAST) {
+            faces |= 1 << BlockFace.WEST.ordinal();
+        }
+        return faces;
+    }
+}
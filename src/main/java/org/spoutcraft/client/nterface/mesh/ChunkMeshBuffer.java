@@ -0,0 +1,221 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.nterface.mesh;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.lwjgl.BufferUtils;
+
+import org.spoutcraft.client.universe.block.BlockFace;
+import org.spoutcraft.client.universe.block.material.Material;
+import org.spoutcraft.client.universe.world.Chunk;
+
+/**
+ * A chunk mesh stored directly in off-heap buffers, ready to be uploaded to the GPU without any conversion. Vertices are packed in 8 bytes: the position as three unsigned bytes (chunk positions
+ * range from 0 to 16 inclusively), the face index as an unsigned byte (see {@link #getFaceIndex(org.spoutcraft.client.universe.block.BlockFace)}), the material ID as an unsigned short, the material
+ * sub ID as an unsigned byte and a last byte reserved for ambient occlusion bits, currently always zero. The normal is derived from the face index in the shader. There are no indices, the mesh is only made of quads
+ * drawn with the shared {@link org.spoutcraft.client.nterface.mesh.QuadIndexBuffer}. The buffer is sized for the worst case chunk, which has a face in every block plane of the chunk, so it never
+ * grows. Buffers are pooled, use {@link #acquire()} to get one and {@link #release()} once the mesh has been uploaded or discarded. At most {@link #MAX_POOL_SIZE} buffers are kept in the pool,
+ * the extra ones are left to the garbage collector. The pool covers the meshing threads and the bounded upload backlog, so in steady state meshing reuses buffers instead of allocating them.
+ */
+public class ChunkMeshBuffer {
+    /**
+     * The maximum number of quads in a chunk mesh. There are at most one face for each block in each of the planes of the chunk.
+     */
+    public static final int MAX_QUADS = 3 * (Chunk.BLOCKS.SIZE + 1) * Chunk.BLOCKS.AREA;
+    /**
+     * The size of a vertex in bytes.
+     */
+    public static final int VERTEX_SIZE = 8;
+    /**
+     * The offset of the material data (ID, sub ID and ambient occlusion) in a vertex, in bytes.
+     */
+    public static final int MATERIAL_OFFSET = 4;
+    /**
+     * The maximum number of buffers kept in the pool. Buffers are held by the meshing threads, then by the completed meshes until they're uploaded, which are at most {@link
+     * org.spoutcraft.client.nterface.mesh.ParallelChunkMesher#MAX_PENDING_UPLOADS}.
+     */
+    public static final int MAX_POOL_SIZE = Runtime.getRuntime().availableProcessors() + ParallelChunkMesher.MAX_PENDING_UPLOADS;
+    private static final Queue<ChunkMeshBuffer> POOL = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger POOL_SIZE = new AtomicInteger();
+    private final ByteBuffer vertices = BufferUtils.createByteBuffer(MAX_QUADS * 4 * VERTEX_SIZE);
+    private int vertexCount = 0;
+    private int connectivity = ChunkConnectivity.ALL;
+
+    private ChunkMeshBuffer() {
+    }
+
+    /**
+     * Returns an empty buffer from the pool, or a new one if the pool is empty.
+     *
+     * @return An empty buffer
+     */
+    public static ChunkMeshBuffer acquire() {
+        final ChunkMeshBuffer buffer = POOL.poll();
+        if (buffer == null) {
+            return new ChunkMeshBuffer();
+        }
+        POOL_SIZE.decrementAndGet();
+        return buffer;
+    }
+
+    /**
+     * Clears the buffer and returns it to the pool, unless the pool is full. It must not be used after this call.
+     */
+    public void release() {
+        clear();
+        if (POOL_SIZE.getAndIncrement() < MAX_POOL_SIZE) {
+            POOL.offer(this);
+        } else {
+            POOL_SIZE.decrementAndGet();
+        }
+    }
+
+    /**
+     * Clears the buffer, discarding all the quads.
+     */
+    public void clear() {
+        vertices.clear();
+        vertexCount = 0;
+        connectivity = ChunkConnectivity.ALL;
+    }
+
+    /**
+     * Adds a quad to the buffer, for a face of a block of the material. The corners are drawn as the triangles (0, 1, 2) and (2, 1, 3), which must be counter-clockwise when looking at the face. The
+     * coordinates range from 0 to 16.
+     *
+     * @param face The face the quad belongs to
+     * @param material The material of the block
+     * @param x0 The x coordinate of the first corner
+     * @param y0 The y coordinate of the first corner
+     * @param z0 The z coordinate of the first corner
+     * @param x1 The x coordinate of the second corner
+     * @param y1 The y coordinate of the second corner
+     * @param z1 The z coordinate of the second corner
+     * @param x2 The x coordinate of the third corner
+     * @param y2 The y coordinate of the third corner
+     * @param z2 The z coordinate of the third corner
+     * @param x3 The x coordinate of the fourth corner
+     * @param y3 The y coordinate of the fourth corner
+     * @param z3 The z coordinate of the fourth corner
+     */
+    public void addQuad(BlockFace face, Material material, int x0, int y0, int z0, int x1, int y1, int z1, int x2, int y2, int z2, int x3, int y3, int z3) {
+        final byte faceIndex = (byte) getFaceIndex(face);
+        final short id = material.getID();
+        final byte subID = (byte) material.getSubID();
+        addVertex(x0, y0, z0, faceIndex, id, subID);
+        addVertex(x1, y1, z1, faceIndex, id, subID);
+        addVertex(x2, y2, z2, faceIndex, id, subID);
+        addVertex(x3, y3, z3, faceIndex, id, subID);
+    }
+
+    private void addVertex(int x, int y, int z, byte face, short id, byte subID) {
+        vertices.put((byte) x).put((byte) y).put((byte) z).put(face);
+        vertices.putShort(id).put(subID).put((byte) 0);
+        vertexCount++;
+    }
+
+    /**
+     * Returns the index of the face stored in the vertices, as expected by the chunk shaders: 0 for north (-x), 1 for south (+x), 2 for bottom (-y), 3 for top (+y), 4 for east (-z) and 5 for west
+     * (+z).
+     *
+     * @param face The face
+     * @return The face index
+     */
+    public static int getFaceIndex(BlockFace face) {
+        switch (face) {
+            case NORTH:
+                return 0;
+            case SOUTH:
+                return 1;
+            case BOTTOM:
+                return 2;
+            case TOP:
+                return 3;
+            case EAST:
+                return 4;
+            case WEST:
+                return 5;
+            default:
+                throw new IllegalArgumentException("Not a block face with a normal: " + face);
+        }
+    }
+
+    /**
+     * Returns the number of vertices in the buffer.
+     *
+     * @return The vertex count
+     */
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    /**
+     * Returns the number of quads in the buffer.
+     *
+     * @return The quad count
+     */
+    public int getQuadCount() {
+        return vertexCount / 4;
+    }
+
+    /**
+     * Returns true if the buffer has no quads, and so nothing to render.
+     *
+     * @return Whether or not the buffer is empty
+     */
+    public boolean isEmpty() {
+        return vertexCount == 0;
+    }
+
+    /**
+     * Returns the connectivity of the chunk's faces, see {@link org.spoutcraft.client.nterface.mesh.ChunkConnectivity}. Defaults to all the faces connected.
+     *
+     * @return The chunk connectivity
+     */
+    public int getConnectivity() {
+        return connectivity;
+    }
+
+    /**
+     * Sets the connectivity of the chunk's faces, see {@link org.spoutcraft.client.nterface.mesh.ChunkConnectivity}.
+     *
+     * @param connectivity The chunk connectivity
+     */
+    public void setConnectivity(int connectivity) {
+        this.connectivity = connectivity;
+    }
+
+    /**
+     * Returns a view of the vertex data, from the first vertex to the last one added.
+     *
+     * @return The vertex data
+     */
+    public ByteBuffer getVertices() {
+        return (ByteBuffer) vertices.duplicate().flip();
+    }
+}
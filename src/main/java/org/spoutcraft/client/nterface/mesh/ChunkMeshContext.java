@@ -0,0 +1,107 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.nterface.mesh;
+
+import org.spoutcraft.client.universe.block.BlockFace;
+import org.spoutcraft.client.universe.block.material.Material;
+import org.spoutcraft.client.universe.world.Chunk;
+
+/**
+ * The reusable state needed to mesh chunks: an occupancy grid and scratch arrays for the meshers and the connectivity flood fill. Contexts aren't thread safe, use {@link #get()} to obtain the one
+ * confined to the current thread. The meshing threads live as long as the mesher, and the quads are written to pooled {@link org.spoutcraft.client.nterface.mesh.ChunkMeshBuffer}s, so once warmed up,
+ * meshing a chunk allocates no arrays or buffers, only a few small objects such as the snapshot group.
+ */
+class ChunkMeshContext {
+    private static final int SIZE = Chunk.BLOCKS.SIZE;
+    private static final ThreadLocal<ChunkMeshContext> CONTEXTS = new ThreadLocal<ChunkMeshContext>() {
+        @Override
+        protected ChunkMeshContext initialValue() {
+            return new ChunkMeshContext();
+        }
+    };
+    private final OccupancyGrid grid = new OccupancyGrid();
+    private final Material[] sliceMaterials = new Material[SIZE * SIZE];
+    private final BlockFace[] sliceFaces = new BlockFace[SIZE * SIZE];
+    private final int[] filledRows = new int[SIZE * SIZE];
+    private final int[] fillQueue = new int[Chunk.BLOCKS.VOLUME];
+
+    private ChunkMeshContext() {
+    }
+
+    /**
+     * Returns the occupancy grid, after updating it with the versions captured by the snapshot group.
+     *
+     * @param group The snapshot group to copy the materials from
+     * @return The updated occupancy grid
+     */
+    OccupancyGrid updateGrid(ChunkSnapshotGroup group) {
+        grid.update(group);
+        return grid;
+    }
+
+    /**
+     * Returns the scratch array for the materials of the faces in a slice of the chunk, indexed by row * size + column.
+     *
+     * @return The slice material array
+     */
+    Material[] getSliceMaterials() {
+        return sliceMaterials;
+    }
+
+    /**
+     * Returns the scratch array for the directions of the faces in a slice of the chunk, indexed like the materials.
+     *
+     * @return The slice face array
+     */
+    BlockFace[] getSliceFaces() {
+        return sliceFaces;
+    }
+
+    /**
+     * Returns the scratch array for the filled blocks of the connectivity flood fill, one row along x for each y and z.
+     *
+     * @return The filled row array
+     */
+    int[] getFilledRows() {
+        return filledRows;
+    }
+
+    /**
+     * Returns the scratch array for the queue of the connectivity flood fill, large enough for every block of a chunk.
+     *
+     * @return The fill queue array
+     */
+    int[] getFillQueue() {
+        return fillQueue;
+    }
+
+    /**
+     * Returns the mesh context confined to the current thread, creating it on first use.
+     *
+     * @return The context for the current thread
+     */
+    static ChunkMeshContext get() {
+        return CONTEXTS.get();
+    }
+}
@@ -24,14 +24,17 @@
 package org.spoutcraft.client.nterface.mesh;
 
 /**
- * Converts chunk snapshot groups to meshes for rendering.
+ * Converts chunk snapshot groups to meshes for rendering. Implementations must be thread safe, as chunks are meshed in parallel.
  */
 public interface ChunkMesher {
     /**
-     * Converts the chunk snapshot group to a mesh.
+     * Converts the chunk snapshot group to a mesh, written to the buffer. Implementations should check {@link org.spoutcraft.client.nterface.mesh.ChunkSnapshotGroup#isStale()} between the major
+     * steps of the meshing, such as the axes, and abort if it returns true, since the mesh would be replaced anyway. The connectivity of the chunk should also be set in the buffer, see {@link
+     * org.spoutcraft.client.nterface.mesh.ChunkConnectivity}.
      *
      * @param chunk The chunk snapshot group
-     * @return The mesh
+     * @param buffer The empty buffer to write the mesh to
+     * @return True if the mesh is complete, false if the meshing was aborted because the chunk was updated
      */
-    public Mesh mesh(ChunkSnapshotGroup chunk);
+    public boolean mesh(ChunkSnapshotGroup chunk, ChunkMeshBuffer buffer);
 }
@@ -24,9 +24,11 @@
 package org.spoutcraft.client.nterface.mesh;
 
 import com.flowpowered.math.vector.Vector3i;
+import org.spoutcraft.client.universe.block.BlockFace;
 import org.spoutcraft.client.universe.block.material.Material;
 import org.spoutcraft.client.universe.block.material.Materials;
 import org.spoutcraft.client.universe.snapshot.ChunkSnapshot;
+import org.spoutcraft.client.universe.snapshot.ChunkSnapshot.Version;
 import org.spoutcraft.client.universe.snapshot.WorldSnapshot;
 import org.spoutcraft.client.universe.world.Chunk;
 
@@ -34,29 +36,93 @@ import org.spoutcraft.client.universe.world.Chunk;
  * A chunk and it's immediate neighbours (BTNESW), used for meshing the chunk including it's edge blocks with proper occlusion.
  */
 public class ChunkSnapshotGroup {
-    private final ChunkSnapshot middle;
-    private final ChunkSnapshot top;
-    private final ChunkSnapshot bottom;
-    private final ChunkSnapshot north;
-    private final ChunkSnapshot east;
-    private final ChunkSnapshot south;
-    private final ChunkSnapshot west;
+    private final ChunkSnapshot snapshot;
+    private final Version middle;
+    private final Version top;
+    private final Version bottom;
+    private final Version north;
+    private final Version east;
+    private final Version south;
+    private final Version west;
 
     /**
-     * Constructs a new snapshot group from the middle chunk snapshot and the world snapshot. The world snapshot from the chunk will be used to source the neighbouring chunks (if they exist).
+     * Constructs a new snapshot group from the middle chunk snapshot and the world snapshot. The world snapshot from the chunk will be used to source the neighbouring chunks (if they exist). The
+     * current versions of the chunk snapshots are captured, so the group is consistent and unaffected by later updates.
      *
      * @param middle The middle chunk
      */
     public ChunkSnapshotGroup(ChunkSnapshot middle) {
-        this.middle = middle;
+        snapshot = middle;
+        this.middle = middle.getVersion();
         final Vector3i position = middle.getPosition();
         final WorldSnapshot world = middle.getWorld();
-        top = world.getChunk(position.add(Vector3i.UP));
-        bottom = world.getChunk(position.sub(Vector3i.UP));
-        north = world.getChunk(position.sub(Vector3i.RIGHT));
-        south = world.getChunk(position.add(Vector3i.RIGHT));
-        east = world.getChunk(position.sub(Vector3i.FORWARD));
-        west = world.getChunk(position.add(Vector3i.FORWARD));
+        top = getVersion(world.getChunk(position.add(Vector3i.UP)));
+        bottom = getVersion(world.getChunk(position.sub(Vector3i.UP)));
+        north = getVersion(world.getChunk(position.sub(Vector3i.RIGHT)));
+        south = getVersion(world.getChunk(position.add(Vector3i.RIGHT)));
+        east = getVersion(world.getChunk(position.sub(Vector3i.FORWARD)));
+        west = getVersion(world.getChunk(position.add(Vector3i.FORWARD)));
+    }
+
+    /**
+     * Returns the middle chunk snapshot.
+     *
+     * @return The middle chunk
+     */
+    public ChunkSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Returns the update number of the middle chunk version captured by the group.
+     *
+     * @return The update number
+     */
+    public long getUpdateNumber() {
+        return middle.getUpdateNumber();
+    }
+
+    /**
+     * Returns true if the middle chunk snapshot has been updated since the group was created, in which case the captured version is out of date.
+     *
+     * @return Whether or not the middle chunk has a newer version
+     */
+    public boolean isStale() {
+        return snapshot.getUpdateNumber() > middle.getUpdateNumber();
+    }
+
+    /**
+     * Returns the captured version of the middle chunk.
+     *
+     * @return The middle chunk version
+     */
+    public Version getVersion() {
+        return middle;
+    }
+
+    /**
+     * Returns the captured version of the chunk neighbouring the middle one on the face, or null if the neighbour is missing.
+     *
+     * @param face The face of the middle chunk the neighbour is on
+     * @return The neighbouring chunk version, or null
+     */
+    public Version getVersion(BlockFace face) {
+        switch (face) {
+            case TOP:
+                return top;
+            case BOTTOM:
+                return bottom;
+            case NORTH:
+                return north;
+            case SOUTH:
+                return south;
+            case EAST:
+                return east;
+            case WEST:
+                return west;
+            default:
+                return null;
+        }
     }
 
     /**
@@ -95,4 +161,8 @@ public class ChunkSnapshotGroup {
         }
         return middle.getMaterial(x, y, z);
     }
+
+    private static Version getVersion(ChunkSnapshot snapshot) {
+        return snapshot != null ? snapshot.getVersion() : null;
+    }
 }
@@ -0,0 +1,165 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.nterface.mesh;
+
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL30;
+
+/**
+ * A vertex array for a chunk mesh, uploaded straight from a {@link org.spoutcraft.client.nterface.mesh.ChunkMeshBuffer} and drawn with the shared {@link
+ * org.spoutcraft.client.nterface.mesh.QuadIndexBuffer}. The vertex data is transferred as is, in a single interleaved buffer, instead of
+ * going through {@link org.spout.renderer.api.data.VertexData}. The packed vertices are read as integer attributes by the chunk shaders: location 0 has the position and face index as four unsigned
+ * bytes, and location 1 has the material ID and the other material data as two unsigned shorts. Requires OpenGL 3.0 or later, and must only be used from the render thread.
+ * <p/>
+ * The vertex buffer is allocated with a fixed capacity, which can be larger than the mesh. This allows the vertex array to be updated with another mesh that fits, without reallocating. See {@link
+ * org.spoutcraft.client.nterface.mesh.ChunkVertexArrayPool}.
+ */
+public class ChunkVertexArray {
+    private int id = 0;
+    private int vertexBuffer = 0;
+    private int capacity = 0;
+    private int indexCount = 0;
+
+    /**
+     * Creates the vertex array and uploads the mesh to it, with a capacity equal to the mesh size. The mesh buffer can be released afterwards. The indices come from the shared quad index buffer,
+     * which must be created.
+     *
+     * @param mesh The mesh to upload
+     * @param indices The shared quad index buffer
+     */
+    public void create(ChunkMeshBuffer mesh, QuadIndexBuffer indices) {
+        create(getSize(mesh), indices);
+        update(mesh);
+    }
+
+    /**
+     * Creates the vertex array with an empty vertex buffer of the capacity. Use {@link #update(ChunkMeshBuffer)} to upload a mesh. The indices come from the shared quad index buffer, which must be
+     * created.
+     *
+     * @param capacity The capacity of the vertex buffer, in bytes
+     * @param indices The shared quad index buffer
+     */
+    public void create(int capacity, QuadIndexBuffer indices) {
+        if (isCreated()) {
+            throw new IllegalStateException("Vertex array has already been created");
+        }
+        id = GL30.glGenVertexArrays();
+        GL30.glBindVertexArray(id);
+        // Allocate the vertex buffer and describe the integer attributes
+        vertexBuffer = GL15.glGenBuffers();
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vertexBuffer);
+        GL15.glBufferData(GL15.GL_ARRAY_BUFFER, capacity, GL15.GL_DYNAMIC_DRAW);
+        this.capacity = capacity;
+        GL20.glEnableVertexAttribArray(0);
+        GL30.glVertexAttribIPointer(0, 4, GL11.GL_UNSIGNED_BYTE, ChunkMeshBuffer.VERTEX_SIZE, 0);
+        GL20.glEnableVertexAttribArray(1);
+        GL30.glVertexAttribIPointer(1, 2, GL11.GL_UNSIGNED_SHORT, ChunkMeshBuffer.VERTEX_SIZE, ChunkMeshBuffer.MATERIAL_OFFSET);
+        // The index buffer binding is part of the vertex array state, no need to upload any indices
+        indices.bind();
+        GL30.glBindVertexArray(0);
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+        GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, 0);
+    }
+
+    /**
+     * Replaces the vertex data with the mesh, which must fit in the capacity. The existing vertex buffer is written to, so no GL objects are created. The mesh buffer can be released afterwards.
+     *
+     * @param mesh The mesh to upload
+     */
+    public void update(ChunkMeshBuffer mesh) {
+        if (!isCreated()) {
+            throw new IllegalStateException("Vertex array hasn't been created");
+        }
+        if (getSize(mesh) > capacity) {
+            throw new IllegalArgumentException("Mesh of " + getSize(mesh) + " bytes doesn't fit in the vertex buffer of " + capacity + " bytes");
+        }
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vertexBuffer);
+        GL15.glBufferSubData(GL15.GL_ARRAY_BUFFER, 0, mesh.getVertices());
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+        indexCount = QuadIndexBuffer.getIndexCount(mesh.getQuadCount());
+    }
+
+    /**
+     * Draws the mesh as triangles.
+     */
+    public void draw() {
+        GL30.glBindVertexArray(id);
+        GL11.glDrawElements(GL11.GL_TRIANGLES, indexCount, QuadIndexBuffer.INDEX_TYPE, 0);
+        GL30.glBindVertexArray(0);
+    }
+
+    /**
+     * Deletes the vertex array and its vertex buffer.
+     */
+    public void destroy() {
+        if (!isCreated()) {
+            return;
+        }
+        GL30.glDeleteVertexArrays(id);
+        GL15.glDeleteBuffers(vertexBuffer);
+        id = 0;
+        vertexBuffer = 0;
+        capacity = 0;
+        indexCount = 0;
+    }
+
+    /**
+     * Returns true if the vertex array has been created and not destroyed yet.
+     *
+     * @return Whether or not the vertex array is created
+     */
+    public boolean isCreated() {
+        return id != 0;
+    }
+
+    /**
+     * Returns the capacity of the vertex buffer, in bytes.
+     *
+     * @return The capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the size of the mesh's vertex data, in bytes.
+     *
+     * @param mesh The mesh
+     * @return The vertex data size
+     */
+    public static int getSize(ChunkMeshBuffer mesh) {
+        return mesh.getVertexCount() * ChunkMeshBuffer.VERTEX_SIZE;
+    }
+
+    /**
+     * Returns the number of indices drawn.
+     *
+     * @return The index count
+     */
+    public int getIndexCount() {
+        return indexCount;
+    }
+}
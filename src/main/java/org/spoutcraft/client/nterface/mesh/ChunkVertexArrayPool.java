@@ -0,0 +1,156 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.nterface.mesh;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A pool of {@link org.spoutcraft.client.nterface.mesh.ChunkVertexArray}s, so that replacing a chunk's mesh doesn't delete and create GL objects. The vertex arrays are sorted in buckets by capacity,
+ * in powers of two, and a mesh is uploaded to a pooled vertex array of the smallest capacity it fits in. Each bucket is used last in, first out, so a mesh that replaces one of a similar size
+ * usually reuses a vertex buffer released recently. Released vertex arrays are only returned to the pool after {@link #RETIRE_FRAMES} frames, so the GPU is done drawing their previous mesh when they
+ * are written to again, instead of the driver having to stall until it is. Call {@link #nextFrame()} once per frame. Must only be used from the render thread.
+ */
+public class ChunkVertexArrayPool {
+    // The smallest capacity is 4KiB, 128 quads
+    private static final int MIN_CAPACITY_BITS = 12;
+    private static final int MAX_SIZE = ChunkMeshBuffer.MAX_QUADS * 4 * ChunkMeshBuffer.VERTEX_SIZE;
+    // Limits the memory held by idle vertex arrays, the extras are destroyed
+    private static final int MAX_POOLED_PER_BUCKET = 32;
+    /**
+     * The number of frames a released vertex array is kept out of the pool, enough for the frames the driver can queue to be drawn.
+     */
+    public static final int RETIRE_FRAMES = 3;
+    private final QuadIndexBuffer indices;
+    private final List<ArrayDeque<ChunkVertexArray>> buckets = new ArrayList<>();
+    // The vertex arrays released in each of the last frames, indexed by frame modulo the retire frame count
+    private final List<List<ChunkVertexArray>> retired = new ArrayList<>();
+    private int frame = 0;
+
+    /**
+     * Constructs a new pool for vertex arrays using the shared quad index buffer. The index buffer is created on the first use if necessary.
+     *
+     * @param indices The shared quad index buffer
+     */
+    public ChunkVertexArrayPool(QuadIndexBuffer indices) {
+        this.indices = indices;
+        final int bucketCount = getBucket(MAX_SIZE) + 1;
+        for (int i = 0; i < bucketCount; i++) {
+            buckets.add(new ArrayDeque<ChunkVertexArray>());
+        }
+        for (int i = 0; i < RETIRE_FRAMES; i++) {
+            retired.add(new ArrayList<ChunkVertexArray>());
+        }
+    }
+
+    /**
+     * Returns a vertex array with the mesh uploaded to it, reusing a pooled one if possible. The mesh buffer can be released afterwards.
+     *
+     * @param mesh The mesh to upload
+     * @return The vertex array for the mesh
+     */
+    public ChunkVertexArray acquire(ChunkMeshBuffer mesh) {
+        final int bucket = getBucket(ChunkVertexArray.getSize(mesh));
+        ChunkVertexArray vertexArray = buckets.get(bucket).poll();
+        if (vertexArray == null) {
+            if (!indices.isCreated()) {
+                indices.create();
+            }
+            vertexArray = new ChunkVertexArray();
+            vertexArray.create(1 << bucket + MIN_CAPACITY_BITS, indices);
+        }
+        vertexArray.update(mesh);
+        return vertexArray;
+    }
+
+    /**
+     * Releases the vertex array, which will be returned to the pool after {@link #RETIRE_FRAMES} frames, or destroyed if its bucket is full then. It must not be used afterwards.
+     *
+     * @param vertexArray The vertex array to release
+     */
+    public void release(ChunkVertexArray vertexArray) {
+        retired.get(frame).add(vertexArray);
+    }
+
+    /**
+     * Starts a new frame, returning the vertex arrays released {@link #RETIRE_FRAMES} frames ago to the pool. Should be called once per frame, before any mesh is uploaded.
+     */
+    public void nextFrame() {
+        frame = (frame + 1) % RETIRE_FRAMES;
+        final List<ChunkVertexArray> expired = retired.get(frame);
+        for (ChunkVertexArray vertexArray : expired) {
+            pool(vertexArray);
+        }
+        expired.clear();
+    }
+
+    private void pool(ChunkVertexArray vertexArray) {
+        final ArrayDeque<ChunkVertexArray> bucket = buckets.get(getBucket(vertexArray.getCapacity()));
+        if (bucket.size() < MAX_POOLED_PER_BUCKET) {
+            bucket.push(vertexArray);
+        } else {
+            vertexArray.destroy();
+        }
+    }
+
+    /**
+     * Returns the number of vertex arrays currently waiting in the pool.
+     *
+     * @return The number of pooled vertex arrays
+     */
+    public int getPooledCount() {
+        int count = 0;
+        for (ArrayDeque<ChunkVertexArray> bucket : buckets) {
+            count += bucket.size();
+        }
+        return count;
+    }
+
+    /**
+     * Destroys all the pooled and retired vertex arrays. Vertex arrays released afterwards are pooled again, so this should be called once they all have been.
+     */
+    public void destroy() {
+        for (List<ChunkVertexArray> frameRetired : retired) {
+            for (ChunkVertexArray vertexArray : frameRetired) {
+                vertexArray.destroy();
+            }
+            frameRetired.clear();
+        }
+        for (ArrayDeque<ChunkVertexArray> bucket : buckets) {
+            for (ChunkVertexArray vertexArray : bucket) {
+                vertexArray.destroy();
+            }
+            bucket.clear();
+        }
+    }
+
+    private static int getBucket(int size) {
+        if (size <= 1 << MIN_CAPACITY_BITS) {
+            return 0;
+        }
+        // The exponent of the smallest power of two greater or equal to the size
+        return 32 - Integer.numberOfLeadingZeros(size - 1) - MIN_CAPACITY_BITS;
+    }
+}
@@ -0,0 +1,175 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.nterface.mesh;
+
+import org.spoutcraft.client.universe.block.BlockFace;
+import org.spoutcraft.client.universe.block.BlockFaces;
+import org.spoutcraft.client.universe.block.material.Material;
+import org.spoutcraft.client.universe.world.Chunk;
+
+/**
+ * A chunk mesher that merges the coplanar faces of the same material and direction into maximal rectangles. Faces are found using an {@link
+ * org.spoutcraft.client.nterface.mesh.OccupancyGrid}, like in {@link org.spoutcraft.client.nterface.mesh.StandardChunkMesher}, one slice of the chunk at a time, then greedily grown along the slice's columns and rows. Flat surfaces end up as a handful of quads instead
+ * of one quad per block face. The corners of each quad are ordered like in the standard mesher. The grid and the slice arrays are reused from the thread's {@link
+ * org.spoutcraft.client.nterface.mesh.ChunkMeshContext}.
+ */
+public class GreedyChunkMesher implements ChunkMesher {
+    private static final int SIZE = Chunk.BLOCKS.SIZE;
+
+    @Override
+    public boolean mesh(ChunkSnapshotGroup chunk, ChunkMeshBuffer buffer) {
+        // TODO: add textures
+        // The material and face of each block face in a slice, indexed by row * SIZE + column
+        final ChunkMeshContext context = ChunkMeshContext.get();
+        final Material[] materials = context.getSliceMaterials();
+        final BlockFace[] faces = context.getSliceFaces();
+        final OccupancyGrid grid = context.updateGrid(chunk);
+        buffer.setConnectivity(ChunkConnectivity.compute(grid));
+        // Abort at each axis if the chunk was updated, the mesh would be discarded anyway
+        if (chunk.isStale()) {
+            return false;
+        }
+        // Mesh the faces on the x axis, rows are y and columns are z
+        for (int xx = 0; xx < SIZE + 1; xx++) {
+            for (int yy = 0; yy < SIZE; yy++) {
+                for (int zz = 0; zz < SIZE; zz++) {
+                    setFace(grid, materials, faces, yy * SIZE + zz, xx - 1, yy, zz, xx, yy, zz, BlockFaces.NS);
+                }
+            }
+            merge(materials, faces, buffer, 0, xx);
+        }
+        if (chunk.isStale()) {
+            return false;
+        }
+        // Mesh the faces on the y axis, rows are z and columns are x
+        for (int yy = 0; yy < SIZE + 1; yy++) {
+            for (int zz = 0; zz < SIZE; zz++) {
+                for (int xx = 0; xx < SIZE; xx++) {
+                    setFace(grid, materials, faces, zz * SIZE + xx, xx, yy - 1, zz, xx, yy, zz, BlockFaces.BT);
+                }
+            }
+            merge(materials, faces, buffer, 1, yy);
+        }
+        if (chunk.isStale()) {
+            return false;
+        }
+        // Mesh the faces on the z axis, rows are y and columns are x
+        for (int zz = 0; zz < SIZE + 1; zz++) {
+            for (int yy = 0; yy < SIZE; yy++) {
+                for (int xx = 0; xx < SIZE; xx++) {
+                    setFace(grid, materials, faces, yy * SIZE + xx, xx, yy, zz - 1, xx, yy, zz, BlockFaces.EW);
+                }
+            }
+            merge(materials, faces, buffer, 2, zz);
+        }
+        return true;
+    }
+
+    private static void setFace(OccupancyGrid grid, Material[] materials, BlockFace[] faces, int i, int bx, int by, int bz, int fx, int fy, int fz, BlockFaces axis) {
+        if (grid.hasFace(axis.get(1), bx, by, bz)) {
+            // The back block's face, looking towards the front block
+            materials[i] = grid.getMaterial(bx, by, bz);
+            faces[i] = axis.get(1);
+        } else if (grid.hasFace(axis.get(0), fx, fy, fz)) {
+            // The front block's face, looking towards the back block
+            materials[i] = grid.getMaterial(fx, fy, fz);
+            faces[i] = axis.get(0);
+        } else {
+            materials[i] = null;
+            faces[i] = null;
+        }
+    }
+
+    private static void merge(Material[] materials, BlockFace[] faces, ChunkMeshBuffer buffer, int axis, int slice) {
+        for (int row = 0; row < SIZE; row++) {
+            for (int column = 0; column < SIZE; ) {
+                final int i = row * SIZE + column;
+                final Material material = materials[i];
+                if (material == null) {
+                    column++;
+                    continue;
+                }
+                final BlockFace face = faces[i];
+                // Grow the rectangle along the row as far as the faces match
+                int width = 1;
+                while (column + width < SIZE && isSame(materials, faces, i + width, material, face)) {
+                    width++;
+                }
+                // Then grow it along the columns, as long as the entire next row matches
+                int height = 1;
+                grow:
+                while (row + height < SIZE) {
+                    final int start = (row + height) * SIZE + column;
+                    for (int w = 0; w < width; w++) {
+                        if (!isSame(materials, faces, start + w, material, face)) {
+                            break grow;
+                        }
+                    }
+                    height++;
+                }
+                // Clear the merged faces so they aren't meshed again
+                for (int h = 0; h < height; h++) {
+                    final int start = (row + h) * SIZE + column;
+                    for (int w = 0; w < width; w++) {
+                        materials[start + w] = null;
+                        faces[start + w] = null;
+                    }
+                }
+                addQuad(buffer, axis, slice, row, column, row + height, column + width, face, material);
+                column += width;
+            }
+        }
+    }
+
+    private static boolean isSame(Material[] materials, BlockFace[] faces, int i, Material material, BlockFace face) {
+        return materials[i] == material && faces[i] == face;
+    }
+
+    private static void addQuad(ChunkMeshBuffer buffer, int axis, int slice, int row0, int column0, int row1, int column1, BlockFace face, Material material) {
+        // The second face of the axis has the middle corners swapped to reverse the winding
+        final boolean reversed = face == BlockFace.SOUTH || face == BlockFace.TOP || face == BlockFace.WEST;
+        switch (axis) {
+            case 0:
+                if (reversed) {
+                    buffer.addQuad(face, material, slice, row1, column1, slice, row0, column1, slice, row1, column0, slice, row0, column0);
+                } else {
+                    buffer.addQuad(face, material, slice, row1, column1, slice, row1, column0, slice, row0, column1, slice, row0, column0);
+                }
+                break;
+            case 1:
+                if (reversed) {
+                    buffer.addQuad(face, material, column0, slice, row0, column0, slice, row1, column1, slice, row0, column1, slice, row1);
+                } else {
+                    buffer.addQuad(face, material, column0, slice, row0, column1, slice, row0, column0, slice, row1, column1, slice, row1);
+                }
+                break;
+            default:
+                if (reversed) {
+                    buffer.addQuad(face, material, column0, row1, slice, column0, row0, slice, column1, row1, slice, column1, row0, slice);
+                } else {
+                    buffer.addQuad(face, material, column0, row1, slice, column1, row1, slice, column0, row0, slice, column1, row0, slice);
+                }
+        }
+    }
+}
@@ -0,0 +1,281 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.nterface.mesh;
+
+import java.util.Arrays;
+
+import org.spoutcraft.client.universe.block.BlockFace;
+import org.spoutcraft.client.universe.block.material.Material;
+import org.spoutcraft.client.universe.block.material.Materials;
+import org.spoutcraft.client.universe.snapshot.ChunkSnapshot.Version;
+import org.spoutcraft.client.universe.world.Chunk;
+
+/**
+ * The materials of a chunk and of the blocks bordering it, copied into flat arrays so that meshing doesn't go through the snapshot group for every block. Coordinates are chunk coordinates from -1 to
+ * {@link org.spoutcraft.client.universe.world.Chunk#BLOCKS} size inclusively. The visibility and opacity of the blocks are stored as bits in rows along the x axis, one row for each y and z
+ * coordinate. The visible faces for each direction are computed from these with a few shifts and masks per row. A face is visible under the same conditions as in {@link
+ * org.spoutcraft.client.nterface.mesh.StandardChunkMesher}, and when two blocks could show their face between each other, only the back block (on the negative side) does. Opacity is taken to not
+ * depend on the occluded material or the direction, which is the case for all the current materials. The edge blocks of the neighbouring chunks are included in the faces, as the standard mesher
+ * does, but the diagonal neighbours are always air. A grid can be reused for another chunk with {@link #update(ChunkSnapshotGroup)}, so meshing doesn't allocate its arrays every time.
+ */
+public class OccupancyGrid {
+    /**
+     * The size of the grid on each axis, the chunk size plus a block on each side.
+     */
+    public static final int SIZE = Chunk.BLOCKS.SIZE + 2;
+    // Bits for the blocks in the chunk and for the blocks with faces in a plane of the chunk, on the x axis
+    private static final long INNER_BITS = (1L << SIZE - 1) - 2;
+    private static final long BACK_BITS = (1L << SIZE - 1) - 1;
+    private static final long FRONT_BITS = (1L << SIZE) - 2;
+    private final Material[] materials = new Material[SIZE * SIZE * SIZE];
+    private final long[] visible = new long[SIZE * SIZE];
+    private final long[] opaque = new long[SIZE * SIZE];
+    private final long[][] faces = new long[BlockFace.values().length][];
+    private final long[] top = new long[SIZE * SIZE];
+    private final long[] bottom = new long[SIZE * SIZE];
+    private final long[] north = new long[SIZE * SIZE];
+    private final long[] south = new long[SIZE * SIZE];
+    private final long[] east = new long[SIZE * SIZE];
+    private final long[] west = new long[SIZE * SIZE];
+    // Cache for the last material looked up, terrain has long runs of the same block
+    private short lastID = -1;
+    private short lastSubID = -1;
+    private Material lastMaterial;
+    private boolean lastVisible;
+    private boolean lastOpaque;
+
+    /**
+     * Constructs a new empty occupancy grid, to be filled with {@link #update(ChunkSnapshotGroup)}.
+     */
+    public OccupancyGrid() {
+        faces[BlockFace.TOP.ordinal()] = top;
+        faces[BlockFace.BOTTOM.ordinal()] = bottom;
+        faces[BlockFace.NORTH.ordinal()] = north;
+        faces[BlockFace.SOUTH.ordinal()] = south;
+        faces[BlockFace.EAST.ordinal()] = east;
+        faces[BlockFace.WEST.ordinal()] = west;
+        Arrays.fill(materials, Materials.AIR);
+    }
+
+    /**
+     * Constructs a new occupancy grid from the versions captured by the snapshot group.
+     *
+     * @param group The snapshot group to copy the materials from
+     */
+    public OccupancyGrid(ChunkSnapshotGroup group) {
+        this();
+        update(group);
+    }
+
+    /**
+     * Replaces the contents of the grid with the versions captured by the snapshot group.
+     *
+     * @param group The snapshot group to copy the materials from
+     */
+    public void update(ChunkSnapshotGroup group) {
+        clear();
+        final int size = Chunk.BLOCKS.SIZE;
+        final int last = size - 1;
+        // The middle chunk
+        copy(group.getVersion(), 0, 0, 0, size, size, size, 0);
+        // The edge blocks of the neighbours, the chunk coordinates wrap around
+        copy(group.getVersion(BlockFace.NORTH), last, 0, 0, 1, size, size, -size);
+        copy(group.getVersion(BlockFace.SOUTH), 0, 0, 0, 1, size, size, size);
+        copy(group.getVersion(BlockFace.BOTTOM), 0, last, 0, size, 1, size, -size);
+        copy(group.getVersion(BlockFace.TOP), 0, 0, 0, size, 1, size, size);
+        copy(group.getVersion(BlockFace.EAST), 0, 0, last, size, size, 1, -size);
+        copy(group.getVersion(BlockFace.WEST), 0, 0, 0, size, size, 1, size);
+        computeFaces();
+    }
+
+    /**
+     * Fills the grid with air. The faces are only updated by {@link #computeFaces()}.
+     */
+    void clear() {
+        // The diagonal neighbours aren't needed, but we fill them in to never return null
+        Arrays.fill(materials, Materials.AIR);
+        Arrays.fill(visible, 0);
+        Arrays.fill(opaque, 0);
+    }
+
+    /**
+     * Sets the material at the position, in chunk coordinates. The faces are only updated by {@link #computeFaces()}, which must be called once all the materials are set.
+     *
+     * @param x The x coordinate of the position
+     * @param y The y coordinate of the position
+     * @param z The z coordinate of the position
+     * @param material The material
+     */
+    void setMaterial(int x, int y, int z, Material material) {
+        final int row = getRowIndex(y + 1, z + 1);
+        final long bit = 1L << x + 1;
+        materials[row * SIZE + x + 1] = material;
+        visible[row] = material.isVisible() ? visible[row] | bit : visible[row] & ~bit;
+        opaque[row] = material.occludes(material, BlockFace.THIS) ? opaque[row] | bit : opaque[row] & ~bit;
+    }
+
+    private void copy(Version version, int x0, int y0, int z0, int sizeX, int sizeY, int sizeZ, int offset) {
+        // The offset is applied to the axis of the neighbour, which is the one with a single block
+        final int offsetX = sizeX == 1 ? offset : 0;
+        final int offsetY = sizeY == 1 ? offset : 0;
+        final int offsetZ = sizeZ == 1 ? offset : 0;
+        for (int yy = y0; yy < y0 + sizeY; yy++) {
+            for (int zz = z0; zz < z0 + sizeZ; zz++) {
+                final int gy = yy + offsetY + 1;
+                final int gz = zz + offsetZ + 1;
+                final int row = getRowIndex(gy, gz);
+                long visibleRow = visible[row];
+                long opaqueRow = opaque[row];
+                for (int xx = x0; xx < x0 + sizeX; xx++) {
+                    final int gx = xx + offsetX + 1;
+                    if (version == null) {
+                        materials[row * SIZE + gx] = Materials.AIR;
+                        continue;
+                    }
+                    lookup(version.getBlockID(xx, yy, zz), version.getBlockSubID(xx, yy, zz));
+                    materials[row * SIZE + gx] = lastMaterial;
+                    if (lastVisible) {
+                        visibleRow |= 1L << gx;
+                    }
+                    if (lastOpaque) {
+                        opaqueRow |= 1L << gx;
+                    }
+                }
+                visible[row] = visibleRow;
+                opaque[row] = opaqueRow;
+            }
+        }
+    }
+
+    private void lookup(short id, short subID) {
+        if (id == lastID && subID == lastSubID) {
+            return;
+        }
+        final Material material = Material.get(id, subID);
+        lastID = id;
+        lastSubID = subID;
+        lastMaterial = material;
+        lastVisible = material.isVisible();
+        lastOpaque = material.occludes(material, BlockFace.THIS);
+    }
+
+    /**
+     * Computes the visible faces from the materials.
+     */
+    void computeFaces() {
+        for (long[] rows : faces) {
+            if (rows != null) {
+                Arrays.fill(rows, 0);
+            }
+        }
+        for (int gy = 0; gy < SIZE; gy++) {
+            for (int gz = 0; gz < SIZE; gz++) {
+                final int row = getRowIndex(gy, gz);
+                final long v = visible[row];
+                final long o = opaque[row];
+                final boolean innerY = gy > 0 && gy < SIZE - 1;
+                final boolean innerZ = gz > 0 && gz < SIZE - 1;
+                // Faces on the x axis, the neighbours are in the same row
+                if (innerY && innerZ) {
+                    south[row] = v & ~(o >>> 1) & BACK_BITS;
+                    north[row] = v & ~(o << 1) & ~(v << 1 & ~o) & FRONT_BITS;
+                }
+                // Faces on the y axis, the neighbours are in the rows above and below
+                if (innerZ) {
+                    if (gy < SIZE - 1) {
+                        top[row] = v & ~opaque[getRowIndex(gy + 1, gz)] & INNER_BITS;
+                    }
+                    if (gy > 0) {
+                        final int back = getRowIndex(gy - 1, gz);
+                        bottom[row] = v & ~opaque[back] & ~(visible[back] & ~o) & INNER_BITS;
+                    }
+                }
+                // Faces on the z axis, the neighbours are in the rows in front and behind
+                if (innerY) {
+                    if (gz < SIZE - 1) {
+                        west[row] = v & ~opaque[getRowIndex(gy, gz + 1)] & INNER_BITS;
+                    }
+                    if (gz > 0) {
+                        final int back = getRowIndex(gy, gz - 1);
+                        east[row] = v & ~opaque[back] & ~(visible[back] & ~o) & INNER_BITS;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the material at the position, in chunk coordinates. Missing neighbours are air.
+     *
+     * @param x The x coordinate of the position
+     * @param y The y coordinate of the position
+     * @param z The z coordinate of the position
+     * @return The material
+     */
+    public Material getMaterial(int x, int y, int z) {
+        return materials[getRowIndex(y + 1, z + 1) * SIZE + x + 1];
+    }
+
+    /**
+     * Returns the visible faces in the direction for the row of blocks along the x axis at the y and z coordinates. The bit x + 1 is set if the block at x has a visible face. Only the faces in the
+     * planes of the chunk are included, so the blocks of the neighbouring chunks only have the faces looking towards the chunk.
+     *
+     * @param face The direction of the faces
+     * @param y The y coordinate of the row
+     * @param z The z coordinate of the row
+     * @return The visible faces as bits
+     */
+    public long getFaces(BlockFace face, int y, int z) {
+        final long[] rows = faces[face.ordinal()];
+        return rows != null ? rows[getRowIndex(y + 1, z + 1)] : 0;
+    }
+
+    /**
+     * Returns the opaque blocks for the row of blocks along the x axis at the y and z coordinates. The bit x + 1 is set if the block at x is opaque.
+     *
+     * @param y The y coordinate of the row
+     * @param z The z coordinate of the row
+     * @return The opaque blocks as bits
+     */
+    public long getOpaque(int y, int z) {
+        return opaque[getRowIndex(y + 1, z + 1)];
+    }
+
+    /**
+     * Returns true if the block at the position, in chunk coordinates, has a visible face in the direction. See {@link #getFaces(org.spoutcraft.client.universe.block.BlockFace, int, int)}.
+     *
+     * @param face The direction of the face
+     * @param x The x coordinate of the position
+     * @param y The y coordinate of the position
+     * @param z The z coordinate of the position
+     * @return Whether or not the face is visible
+     */
+    public boolean hasFace(BlockFace face, int x, int y, int z) {
+        return (getFaces(face, y, z) >>> x + 1 & 1) != 0;
+    }
+
+    private static int getRowIndex(int gy, int gz) {
+        return gy * SIZE + gz;
+    }
+}
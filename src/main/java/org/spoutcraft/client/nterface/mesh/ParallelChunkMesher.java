@@ -23,77 +23,521 @@
  */
 package org.spoutcraft.client.nterface.mesh;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.Callable;
-import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.flowpowered.math.vector.Vector3f;
+import com.flowpowered.math.vector.Vector3i;
 
-import org.spout.renderer.api.data.VertexData;
-import org.spout.renderer.api.gl.VertexArray;
 import org.spout.renderer.api.model.Model;
 
 import org.spoutcraft.client.nterface.Interface;
 import org.spoutcraft.client.universe.snapshot.ChunkSnapshot;
+import org.spoutcraft.client.universe.world.Chunk;
 
 /**
  * Meshes chunks in parallel. Returns chunk models which may not be rendered when {@link org.spoutcraft.client.nterface.mesh.ParallelChunkMesher.ChunkModel#render()} is called, this is happens when
- * the meshing is in progress. Parallelism is achieved using a {@link java.util.concurrent.ForkJoinPool} with default thread count. Chunks are meshed using the provided {@link
- * org.spoutcraft.client.nterface.mesh.ChunkMesher}. An optional {@link org.spoutcraft.client.nterface.Interface} can be passed to the constructor for chunk culling.
+ * the meshing is in progress. Parallelism is achieved using a work-stealing {@link java.util.concurrent.ForkJoinPool}, which by default has one thread per
+ * available processor, minus the ones reserved for the render and network threads (see {@link #getDefaultThreadCount(int)}). Chunks are meshed using the provided {@link
+ * org.spoutcraft.client.nterface.mesh.ChunkMesher}. The {@link org.spoutcraft.client.nterface.Interface} passed to the constructor provides the camera and frustum for prioritizing the chunks.
+ * <p/>
+ * Pending tasks are ordered by priority: chunks in the view frustum first, then the closest to the camera. The priorities are computed when queueing, and again on {@link #updatePriorities()},
+ * which should be called when the camera has moved significantly. Queueing a chunk whose previous model is still waiting for its meshing to start reuses that task instead of adding another one, as
+ * it will mesh the latest version of the chunk anyway.
+ * <p/>
+ * Each task is for an update number of the chunk. If the chunk is updated again before the task starts, or while it's meshing, the task is aborted, since a newer one will replace it. The model
+ * of an aborted task keeps rendering its previous model until then.
+ * <p/>
+ * Completed meshes aren't uploaded by the models when rendering, but by {@link #uploadMeshes(int, long)}, which should be called once per frame before rendering. It uploads the meshes closest to
+ * the camera first, within a byte and time budget, so many meshes completing at once are spread over several frames instead of causing one long frame. Each completed mesh holds a pooled {@link
+ * org.spoutcraft.client.nterface.mesh.ChunkMeshBuffer} until uploaded, so once {@link #MAX_PENDING_UPLOADS} meshes are waiting, the meshing threads stop taking new tasks until the uploads catch
+ * up.
+ * <p/>
+ * The meshes are uploaded to their own vertex arrays, recycled through a {@link org.spoutcraft.client.nterface.mesh.ChunkVertexArrayPool}, unless {@link #createArena(int)} was called. In that case
+ * they're sub-allocated from a single {@link org.spoutcraft.client.nterface.mesh.ChunkArena}, and drawn all at once by the returned {@link
+ * org.spoutcraft.client.nterface.mesh.ParallelChunkMesher.ChunkBatchModel}, instead of by the chunk models.
+ * <p/>
+ * The queue depth and the task latencies, the time waited in the queue and the time spent meshing, are tracked for monitoring. See {@link #getPendingCount()}, {@link #getAverageWaitTime()} and
+ * {@link #getAverageMeshTime()}.
  *
  * @see org.spoutcraft.client.nterface.mesh.ParallelChunkMesher.ChunkModel
  */
 public class ParallelChunkMesher {
-    private final ChunkMesher mesher;
+    /**
+     * The maximum number of completed meshes waiting to be uploaded, after which the meshing threads stop taking new tasks.
+     */
+    public static final int MAX_PENDING_UPLOADS = 64;
+    private static final Vector3f CHUNK_CENTER = new Vector3f(Chunk.BLOCKS.SIZE / 2f, Chunk.BLOCKS.SIZE / 2f, Chunk.BLOCKS.SIZE / 2f);
+    private static final float OUTSIDE_FRUSTUM_PRIORITY = 1 << 16;
+    private volatile ChunkMesher mesher;
     private final Interface nterface;
-    private final ThreadPoolExecutor executor;
+    // The pool only runs the tasks, ordering is done by the queue: each submitted runner takes the best pending task when it starts
+    private final PriorityBlockingQueue<ChunkMeshTask> queue = new PriorityBlockingQueue<>();
+    // The runners submitted but not started yet, there must be at least one per queued task
+    private final AtomicInteger waitingRunners = new AtomicInteger();
+    // The mesh buffers held by the running and completed tasks, until uploaded or discarded
+    private final AtomicInteger heldBuffers = new AtomicInteger();
+    private final Runnable runNext = new Runnable() {
+        @Override
+        public void run() {
+            waitingRunners.decrementAndGet();
+            // Too many meshes are waiting to be uploaded, leave the task queued, the runner is submitted again once they're uploaded
+            if (isUploadBacklogFull()) {
+                return;
+            }
+            final ChunkMeshTask task = queue.poll();
+            if (task != null) {
+                task.run();
+            }
+        }
+    };
+    private final ForkJoinPool pool;
+    private final QuadIndexBuffer indexBuffer = new QuadIndexBuffer();
+    private final ChunkVertexArrayPool vertexArrays = new ChunkVertexArrayPool(indexBuffer);
+    private final ChunkArena arena = new ChunkArena(indexBuffer);
+    private ChunkBatchModel batchModel;
+    // Completed tasks are added by the meshing threads, then moved to the upload list by the render thread
+    private final ConcurrentLinkedQueue<ChunkMeshTask> completed = new ConcurrentLinkedQueue<>();
+    private final List<ChunkMeshTask> uploads = new ArrayList<>();
+    private volatile int pendingUploadCount = 0;
+    private long taskCount = 0;
+    // Latency metrics, in nanoseconds, since the last reset
+    private final AtomicLong completedCount = new AtomicLong();
+    private final AtomicLong abortedCount = new AtomicLong();
+    private final AtomicLong totalWaitTime = new AtomicLong();
+    private final AtomicLong totalMeshTime = new AtomicLong();
 
     /**
      * Constructs a new parallel chunk mesher from the actual mesher.
      *
      * @param mesher The chunk mesher
-     * @param nterface The interface, for culling chunk models (optional)
+     * @param nterface The interface, for prioritizing the chunks
+     * @param threads The number of meshing threads, must be greater than zero
      */
-    public ParallelChunkMesher(Interface nterface, ChunkMesher mesher) {
+    public ParallelChunkMesher(Interface nterface, ChunkMesher mesher, int threads) {
         this.nterface = nterface;
         this.mesher = mesher;
-        this.executor = new ThreadPoolExecutor(4, 4,
-                60L, TimeUnit.SECONDS,
-                new LinkedBlockingQueue<Runnable>());
-        executor.allowCoreThreadTimeOut(true);
+        // Async mode is better suited to tasks which are never joined
+        pool = new ForkJoinPool(threads, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+    }
+
+    /**
+     * Returns the default number of meshing threads: the available processors minus the reserved ones, but at least one.
+     *
+     * @param reserved The number of processors to leave for other threads, such as the render and network ones
+     * @return The default number of meshing threads
+     */
+    public static int getDefaultThreadCount(int reserved) {
+        return Math.max(1, Runtime.getRuntime().availableProcessors() - reserved);
+    }
+
+    /**
+     * Returns the number of threads used for meshing.
+     *
+     * @return The number of meshing threads
+     */
+    public int getThreadCount() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * Returns the chunk mesher used for the meshing tasks.
+     *
+     * @return The chunk mesher
+     */
+    public ChunkMesher getMesher() {
+        return mesher;
+    }
+
+    /**
+     * Sets the chunk mesher used for the meshing tasks. Tasks already in progress will complete with the previous mesher.
+     *
+     * @param mesher The chunk mesher
+     */
+    public void setMesher(ChunkMesher mesher) {
+        this.mesher = mesher;
     }
 
     /**
-     * Queues a chunk to be meshed, returning a chunk model which can be used normally. The chunk model will actually only renderer the chunk once meshing it complete.
+     * Creates the arena the meshes will be uploaded to, instead of their own vertex arrays, and returns the model that draws them. It must be rendered in place of the chunk models, which won't draw
+     * anything. Must be called from the render thread, before any mesh is uploaded. Requires OpenGL 3.2 or later.
+     *
+     * @param capacity The initial capacity of the arena, in bytes, it grows as needed
+     * @return The model drawing the chunks
+     */
+    public ChunkBatchModel createArena(int capacity) {
+        if (arena.isCreated()) {
+            throw new IllegalStateException("Chunk arena has already been created");
+        }
+        arena.create(capacity);
+        batchModel = new ChunkBatchModel();
+        return batchModel;
+    }
+
+    /**
+     * Returns the model drawing the chunks from the arena, or null if {@link #createArena(int)} wasn't called.
+     *
+     * @return The chunk batch model, or null
+     */
+    public ChunkBatchModel getBatchModel() {
+        return batchModel;
+    }
+
+    /**
+     * Queues a chunk to be meshed, returning a chunk model which can be used normally. The chunk model will actually only renderer the chunk once meshing it complete. The previous model of the chunk,
+     * if any, will be rendered until then (see {@link org.spoutcraft.client.nterface.mesh.ParallelChunkMesher.ChunkModel#setPrevious(org.spoutcraft.client.nterface.mesh.ParallelChunkMesher.ChunkModel)}).
+     * If the meshing of the previous model hasn't started yet, its task is transferred to the new model, and the previous model is left empty. It should be discarded without being destroyed.
      *
      * @param chunk The chunk to mesh
+     * @param previous The previous model of the chunk, or null if none
      * @return The chunk's model
      */
-    public ChunkModel queue(ChunkSnapshot chunk) {
-        return new ChunkModel(executor.submit(new ChunkMeshTask(chunk)));
+    public ChunkModel queue(ChunkSnapshot chunk, ChunkModel previous) {
+        final long updateNumber = chunk.getUpdateNumber();
+        if (previous != null) {
+            final ChunkMeshTask pending = previous.takePendingTask(updateNumber);
+            if (pending != null) {
+                // The pending task will mesh the latest chunk version when it runs, no need for another one
+                final ChunkModel model = new ChunkModel(pending, updateNumber);
+                model.setPrevious(previous.takePrevious());
+                return model;
+            }
+        }
+        final ChunkMeshTask task = new ChunkMeshTask(new ChunkMeshCallable(chunk, updateNumber), taskCount++);
+        task.priority = getPriority(chunk.getPosition());
+        queue.add(task);
+        submitRunner();
+        final ChunkModel model = new ChunkModel(task, updateNumber);
+        model.setPrevious(previous);
+        return model;
+    }
+
+    /**
+     * Recomputes the priorities of the pending tasks from the current camera position and view frustum. Should be called from the interface thread when the camera moved enough to change the
+     * order, such as after crossing a chunk boundary.
+     */
+    public void updatePriorities() {
+        final List<ChunkMeshTask> pending = new ArrayList<>(queue.size());
+        queue.drainTo(pending);
+        for (ChunkMeshTask task : pending) {
+            task.priority = getPriority(task.position);
+        }
+        queue.addAll(pending);
+        // Runners that started while the queue was drained found no task, replace them so none is left behind
+        submitMissingRunners();
+    }
+
+    private void submitRunner() {
+        waitingRunners.incrementAndGet();
+        pool.execute(runNext);
+    }
+
+    private void submitMissingRunners() {
+        while (waitingRunners.get() < queue.size()) {
+            submitRunner();
+        }
+    }
+
+    private boolean isUploadBacklogFull() {
+        return heldBuffers.get() >= MAX_PENDING_UPLOADS;
+    }
+
+    private ChunkMeshBuffer acquireBuffer() {
+        heldBuffers.incrementAndGet();
+        return ChunkMeshBuffer.acquire();
+    }
+
+    private void releaseBuffer(ChunkMeshBuffer buffer) {
+        buffer.release();
+        heldBuffers.decrementAndGet();
+    }
+
+    /**
+     * Returns the number of meshing tasks waiting to be run.
+     *
+     * @return The number of pending tasks
+     */
+    public int getPendingCount() {
+        return queue.size();
+    }
+
+    /**
+     * Uploads the completed meshes to the GPU, closest to the camera and in the view frustum first, until the byte or time budget is exceeded. At least one mesh is uploaded if any are ready, so
+     * progress is always made. The meshes left over are uploaded on the next calls, and meshing stopped by a full upload backlog resumes once there's room. Must be called from the render thread,
+     * once per frame before rendering, as it also counts the frames for recycling the vertex arrays and arena blocks.
+     *
+     * @param maxBytes The maximum number of vertex bytes to upload
+     * @param maxTime The maximum time to spend uploading, in nanoseconds
+     * @return The number of meshes uploaded
+     */
+    public int uploadMeshes(int maxBytes, long maxTime) {
+        vertexArrays.nextFrame();
+        if (arena.isCreated()) {
+            arena.nextFrame();
+        }
+        for (ChunkMeshTask task; (task = completed.poll()) != null; ) {
+            uploads.add(task);
+        }
+        if (uploads.isEmpty()) {
+            resumeMeshing();
+            return 0;
+        }
+        for (ChunkMeshTask task : uploads) {
+            task.priority = getPriority(task.position);
+        }
+        Collections.sort(uploads);
+        final long start = System.nanoTime();
+        int bytes = 0;
+        int uploaded = 0;
+        int i = 0;
+        for (; i < uploads.size(); i++) {
+            if (uploaded > 0 && (bytes >= maxBytes || System.nanoTime() - start >= maxTime)) {
+                break;
+            }
+            final ChunkMeshTask task = uploads.get(i);
+            final ChunkModel model = task.model;
+            // Skip the tasks of models destroyed since completion
+            if (model != null && model.mesh == task) {
+                bytes += model.upload();
+                uploaded++;
+            }
+        }
+        uploads.subList(0, i).clear();
+        pendingUploadCount = uploads.size();
+        resumeMeshing();
+        return uploaded;
+    }
+
+    private void resumeMeshing() {
+        // The runners that found the backlog full left their task queued, replace them once there's room
+        if (!isUploadBacklogFull()) {
+            submitMissingRunners();
+        }
+    }
+
+    /**
+     * Returns the number of completed meshes waiting to be uploaded, as of the last call to {@link #uploadMeshes(int, long)}.
+     *
+     * @return The number of pending uploads
+     */
+    public int getPendingUploadCount() {
+        return pendingUploadCount;
+    }
+
+    /**
+     * Returns the number of meshing tasks completed since the last call to {@link #resetMetrics()}.
+     *
+     * @return The number of completed tasks
+     */
+    public long getCompletedCount() {
+        return completedCount.get();
+    }
+
+    /**
+     * Returns the number of meshing tasks aborted because their chunk was updated, since the last call to {@link #resetMetrics()}.
+     *
+     * @return The number of aborted tasks
+     */
+    public long getAbortedCount() {
+        return abortedCount.get();
+    }
+
+    /**
+     * Returns the average time the completed tasks waited in the queue before being run, in milliseconds, since the last call to {@link #resetMetrics()}.
+     *
+     * @return The average queue wait time in milliseconds
+     */
+    public float getAverageWaitTime() {
+        return getAverage(totalWaitTime);
+    }
+
+    /**
+     * Returns the average time spent meshing by the completed tasks, in milliseconds, since the last call to {@link #resetMetrics()}.
+     *
+     * @return The average meshing time in milliseconds
+     */
+    public float getAverageMeshTime() {
+        return getAverage(totalMeshTime);
+    }
+
+    /**
+     * Resets the task latency metrics.
+     */
+    public void resetMetrics() {
+        completedCount.set(0);
+        abortedCount.set(0);
+        totalWaitTime.set(0);
+        totalMeshTime.set(0);
+    }
+
+    private float getAverage(AtomicLong total) {
+        final long count = completedCount.get();
+        return count > 0 ? total.get() / (float) count / TimeUnit.MILLISECONDS.toNanos(1) : 0;
+    }
+
+    private float getPriority(Vector3i position) {
+        // Use the distance from the camera to the chunk center, in chunks, which keeps the values small
+        final Vector3f camera = nterface.getRenderer().getRenderModelsNode().getCamera().getPosition();
+        final Vector3i blockPosition = position.mul(Chunk.BLOCKS.SIZE);
+        final Vector3f center = blockPosition.toFloat().add(CHUNK_CENTER);
+        final float distance = center.sub(camera).length() / Chunk.BLOCKS.SIZE;
+        // Chunks outside the frustum come after all the visible ones
+        return nterface.isChunkVisible(blockPosition) ? distance : distance + OUTSIDE_FRUSTUM_PRIORITY;
     }
 
     /**
-     * Shuts down the executor used for meshing, cancelling any meshing pending or active.
+     * Shuts down the pool used for meshing, cancelling any meshing pending or active. Also destroys the pooled vertex arrays, the arena and the shared quad index buffer, so must be called from the
+     * render thread, after all the chunk models have been destroyed.
      */
     public void shutdown() {
-        executor.shutdownNow();
+        pool.shutdownNow();
+        for (ChunkMeshTask task : queue) {
+            task.cancel(false);
+        }
+        queue.clear();
+        completed.clear();
+        uploads.clear();
+        vertexArrays.destroy();
+        arena.destroy();
+        batchModel = null;
+        indexBuffer.destroy();
+    }
+
+    private class ChunkMeshTask extends FutureTask<ChunkMeshBuffer> implements Comparable<ChunkMeshTask> {
+        private final ChunkMeshCallable callable;
+        private final Vector3i position;
+        private final long number;
+        // Only modified from the interface thread, while the task isn't in the queue
+        private float priority;
+        private final long queueTime = System.nanoTime();
+        // The model waiting for the task, can change until the task starts
+        private volatile ChunkModel model;
+
+        private ChunkMeshTask(ChunkMeshCallable callable, long number) {
+            super(callable);
+            this.callable = callable;
+            position = callable.toMesh.getPosition();
+            this.number = number;
+        }
+
+        private boolean retarget(long updateNumber) {
+            return callable.retarget(updateNumber);
+        }
+
+        private boolean isAborted() {
+            return callable.aborted;
+        }
+
+        private int getConnectivity() {
+            return callable.connectivity;
+        }
+
+        @Override
+        protected void done() {
+            if (!isCancelled()) {
+                completed.add(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            final long startTime = System.nanoTime();
+            super.run();
+            if (isCancelled()) {
+                // The mesh of a task cancelled while running is discarded, so release its buffer here
+                callable.releaseMesh();
+                return;
+            }
+            if (callable.aborted) {
+                abortedCount.incrementAndGet();
+                return;
+            }
+            totalWaitTime.addAndGet(startTime - queueTime);
+            totalMeshTime.addAndGet(System.nanoTime() - startTime);
+            completedCount.incrementAndGet();
+        }
+
+        @Override
+        public int compareTo(ChunkMeshTask other) {
+            final int compare = Float.compare(priority, other.priority);
+            // Same priority, use the queueing order
+            return compare != 0 ? compare : Long.compare(number, other.number);
+        }
     }
 
-    private class ChunkMeshTask implements Callable<VertexData> {
+    private class ChunkMeshCallable implements Callable<ChunkMeshBuffer> {
         private final ChunkSnapshot toMesh;
+        // The update number the task is for, and whether or not it started. Guarded by the callable, so the number can't change once started
+        private long updateNumber;
+        private boolean started = false;
+        private volatile boolean aborted = false;
+        // Kept separately from the buffer, which isn't returned for empty meshes
+        private volatile int connectivity = ChunkConnectivity.ALL;
+        // The mesh returned by the call, kept to release its buffer if the task is cancelled
+        private volatile ChunkMeshBuffer mesh;
 
-        private ChunkMeshTask(ChunkSnapshot toMesh) {
+        private ChunkMeshCallable(ChunkSnapshot toMesh, long updateNumber) {
             this.toMesh = toMesh;
+            this.updateNumber = updateNumber;
+        }
+
+        private synchronized boolean retarget(long updateNumber) {
+            if (started) {
+                return false;
+            }
+            this.updateNumber = updateNumber;
+            return true;
         }
 
         @Override
-        public VertexData call() {
-            final Mesh mesh = mesher.mesh(new ChunkSnapshotGroup(toMesh));
-            if (mesh.isEmpty()) {
+        public ChunkMeshBuffer call() {
+            final long target;
+            synchronized (this) {
+                started = true;
+                target = updateNumber;
+            }
+            final ChunkSnapshotGroup group = new ChunkSnapshotGroup(toMesh);
+            // The chunk was updated since the task was queued, a newer task will replace this one
+            if (group.getUpdateNumber() > target) {
+                aborted = true;
                 return null;
             }
-            return mesh.build();
+            final ChunkMeshBuffer buffer = acquireBuffer();
+            try {
+                if (!mesher.mesh(group, buffer)) {
+                    aborted = true;
+                    releaseBuffer(buffer);
+                    return null;
+                }
+            } catch (RuntimeException ex) {
+                releaseBuffer(buffer);
+                throw ex;
+            }
+            connectivity = buffer.getConnectivity();
+            // The buffer is held until the mesh is uploaded, unless there's nothing to upload
+            if (buffer.isEmpty()) {
+                releaseBuffer(buffer);
+                return null;
+            }
+            mesh = buffer;
+            return buffer;
+        }
+
+        private void releaseMesh() {
+            if (mesh != null) {
+                releaseBuffer(mesh);
+                mesh = null;
+            }
         }
     }
 
@@ -102,64 +546,132 @@ public class ParallelChunkMesher {
      * org.spoutcraft.client.nterface.mesh.ParallelChunkMesher.ChunkModel#setPrevious(org.spoutcraft.client.nterface.mesh.ParallelChunkMesher.ChunkModel)}. This previous model will be used until the
      * mesh becomes available. At this point, the previous model will be destroyed, and the new one rendered. When a model isn't needed anymore, you must call {@link
      * org.spoutcraft.client.nterface.mesh.ParallelChunkMesher.ChunkModel#destroy()} to dispose of it completely. This will also cancel the meshing if it's in progress, and destroy the previous model.
-     * The chunk can also be automatically culled by passing an optional {@link org.spoutcraft.client.nterface.Interface} to the {@link org.spoutcraft.client.nterface.mesh.ParallelChunkMesher}
-     * constructor.
+     * The model is only rendered when marked as visible with {@link #setVisible(boolean)}, which the {@link org.spoutcraft.client.nterface.Interface} does once per frame for the chunks in the view
+     * frustum.
      */
     public class ChunkModel extends Model {
-        private Future<VertexData> mesh;
+        private ChunkMeshTask mesh;
+        private final long updateNumber;
         private boolean complete = false;
         private ChunkModel previous;
+        private ChunkVertexArray vertexArray;
+        private ChunkArena.Allocation allocation;
+        private boolean visible = false;
+        private int connectivity = ChunkConnectivity.ALL;
 
-        private ChunkModel(Future<VertexData> mesh) {
+        private ChunkModel(ChunkMeshTask mesh, long updateNumber) {
             this.mesh = mesh;
+            this.updateNumber = updateNumber;
+            mesh.model = this;
         }
 
-        @Override
-        public void render() {
-            // If we have not received the mesh and it's done
-            if (!complete && mesh.isDone()) {
-                // Get the mesh
-                final VertexData vertexData;
-                try {
-                    vertexData = mesh.get();
-                } catch (Exception ex) {
-                    throw new RuntimeException(ex);
-                }
+        /**
+         * Returns the update number of the chunk snapshot this model was queued for.
+         *
+         * @return The update number
+         */
+        public long getUpdateNumber() {
+            return updateNumber;
+        }
+
+        private int upload() {
+            if (mesh.isAborted()) {
+                // The chunk was updated during meshing, keep rendering the previous model until the newer one replaces this one
                 mesh = null;
-                // If the chunk mesher returned a mesh. It may not return one if the chunk has no mesh (completely invisible)
-                if (vertexData != null) {
-                    // Create the vertex array from the mesh
-                    final VertexArray vertexArray = nterface.getRenderer().getGLFactory().createVertexArray();
-                    vertexArray.setData(vertexData);
-                    vertexArray.create();
-                    // Set it for rendering
-                    setVertexArray(vertexArray);
-                }
-                // Destroy and discard the previous model (if any), as it is now obsolete
-                if (previous != null) {
-                    previous.destroy();
-                    previous = null;
+                return 0;
+            }
+            // Get the mesh
+            final ChunkMeshBuffer buffer;
+            try {
+                buffer = mesh.get();
+            } catch (Exception ex) {
+                throw new RuntimeException(ex);
+            }
+            connectivity = mesh.getConnectivity();
+            mesh = null;
+            // Destroy and discard the previous model (if any), as it is now obsolete. Its vertex array is only reused once the GPU is done drawing it
+            if (previous != null) {
+                previous.destroy();
+                previous = null;
+            }
+            int bytes = 0;
+            // If the chunk mesher returned a mesh. It may not return one if the chunk has no mesh (completely invisible)
+            if (buffer != null) {
+                // Upload the mesh straight from the buffer, which can then be discarded
+                if (arena.isCreated()) {
+                    allocation = arena.allocate(buffer, getPosition());
+                } else {
+                    vertexArray = vertexArrays.acquire(buffer);
                 }
-                // Set the model as complete
-                complete = true;
+                bytes = ChunkVertexArray.getSize(buffer);
+                releaseBuffer(buffer);
             }
+            // Set the model as complete
+            complete = true;
+            return bytes;
+        }
+
+        @Override
+        public void render() {
             // It's hard to look right
             // at the world baby
             // But here's my frustum
             // so cull me maybe?
-            if (!nterface.isChunkVisible(getPosition())) {
-                return;
+            if (visible) {
+                draw();
             }
+        }
+
+        private void draw() {
             // If we have a vertex array, we can render
             if (complete) {
-                // Only render if the model has a vertex array and we're visible
-                if (getVertexArray() != null) {
-                    super.render();
+                // Only render if the model has a vertex array
+                if (vertexArray != null) {
+                    vertexArray.draw();
                 }
             } else if (previous != null) {
-                // Else, fall back on the previous model if we have one and we're visible
-                previous.render();
+                // Else, fall back on the previous model if we have one
+                previous.draw();
+            }
+        }
+
+        private ChunkArena.Allocation getDrawnAllocation() {
+            // Same as drawing, fall back on the previous model until complete
+            if (complete) {
+                return allocation;
+            }
+            return previous != null ? previous.getDrawnAllocation() : null;
+        }
+
+        /**
+         * Returns the connectivity of the chunk's faces, see {@link org.spoutcraft.client.nterface.mesh.ChunkConnectivity}. Until the mesh is uploaded, this is the connectivity of the previous
+         * model, or all the faces connected if there's none.
+         *
+         * @return The chunk connectivity
+         */
+        public int getConnectivity() {
+            if (complete) {
+                return connectivity;
             }
+            return previous != null ? previous.getConnectivity() : ChunkConnectivity.ALL;
+        }
+
+        /**
+         * Returns true if the model is rendered, false if it's culled.
+         *
+         * @return Whether or not the model is visible
+         */
+        public boolean isVisible() {
+            return visible;
+        }
+
+        /**
+         * Sets whether or not the model is rendered. Models start invisible.
+         *
+         * @param visible Whether or not the model is visible
+         */
+        public void setVisible(boolean visible) {
+            this.visible = visible;
         }
 
         /**
@@ -171,19 +683,42 @@ public class ParallelChunkMesher {
             this.previous = previous;
         }
 
+        private ChunkMeshTask takePendingTask(long updateNumber) {
+            // Only take the task if it can still be updated to mesh the new version
+            if (complete || mesh == null || !mesh.retarget(updateNumber)) {
+                return null;
+            }
+            final ChunkMeshTask pending = mesh;
+            mesh = null;
+            return pending;
+        }
+
+        private ChunkModel takePrevious() {
+            final ChunkModel taken = previous;
+            previous = null;
+            return taken;
+        }
+
         /**
          * Destroys the models, cancelling the meshing task if in progress, and the previous model (if any).
          */
         public void destroy() {
             // If we have a vertex array, destroy it
             if (complete) {
-                if (getVertexArray() != null) {
-                    getVertexArray().destroy();
+                if (vertexArray != null) {
+                    vertexArrays.release(vertexArray);
+                    vertexArray = null;
+                }
+                if (allocation != null) {
+                    arena.free(allocation);
+                    allocation = null;
                 }
                 complete = false;
             } else {
-                // Else, the mesh is still in progress, cancel that
-                mesh.cancel(false);
+                // Else, the mesh is still in progress, cancel that, or release its buffer if it completed. A task cancelled while meshing releases its own buffer
+                if (mesh != null && !mesh.cancel(false)) {
+                    releaseMesh(mesh);
+                }
                 mesh = null;
                 // Also destroy and discard the previous model if we have one
                 if (previous != null) {
@@ -192,5 +727,84 @@ public class ParallelChunkMesher {
                 }
             }
         }
+
+        private void releaseMesh(FutureTask<ChunkMeshBuffer> mesh) {
+            try {
+                final ChunkMeshBuffer buffer = mesh.get();
+                if (buffer != null) {
+                    releaseBuffer(buffer);
+                }
+            } catch (Exception ignored) {
+                // The task failed, there's no buffer to release
+            }
+        }
+    }
+
+    /**
+     * Draws the chunk models uploaded to the arena, in as few draw calls as supported, see {@link org.spoutcraft.client.nterface.mesh.ChunkArena}. The models to draw are set once per frame with
+     * {@link #update(java.util.Collection)}, then drawn by every pass rendering this model, such as the shadow one. The chunk positions are in the arena, so this model should stay at the origin.
+     */
+    public class ChunkBatchModel extends Model {
+        private ChunkBatchModel() {
+        }
+
+        /**
+         * Sets the chunk models to draw, until the next update. A model that isn't uploaded yet draws its previous model, if any. Must be called from the render thread, after {@link
+         * #uploadMeshes(int, long)} since uploading can free the previous models.
+         *
+         * @param models The chunk models to draw
+         */
+        public void update(Collection<ChunkModel> models) {
+            arena.clearDraws();
+            for (ChunkModel model : models) {
+                final ChunkArena.Allocation allocation = model.getDrawnAllocation();
+                if (allocation != null) {
+                    arena.addDraw(allocation);
+                }
+            }
+            arena.uploadDraws();
+        }
+
+        /**
+         * Returns the number of chunk meshes drawn on each pass.
+         *
+         * @return The number of chunk meshes drawn
+         */
+        public int getDrawnCount() {
+            return arena.getDrawCount();
+        }
+
+        /**
+         * Returns the number of draw calls made on each pass: one if the draws are indirect, else one per chunk mesh.
+         *
+         * @return The number of draw calls per pass
+         */
+        public int getDrawCallCount() {
+            final int count = arena.getDrawCount();
+            return arena.isIndirect() ? Math.min(count, 1) : count;
+        }
+
+        /**
+         * Returns the capacity of the chunk arena, in bytes.
+         *
+         * @return The arena capacity
+         */
+        public int getArenaCapacity() {
+            return arena.getCapacity();
+        }
+
+        /**
+         * Returns the size of the chunk arena allocated to the meshes, in bytes.
+         *
+         * @return The allocated size
+         */
+        public int getArenaAllocatedSize() {
+            return arena.getAllocatedSize();
+        }
+
+        @Override
+        public void render() {
+            arena.draw();
+        }
     }
 }
@@ -0,0 +1,102 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.nterface.mesh;
+
+import java.nio.ShortBuffer;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL15;
+
+/**
+ * An index buffer shared by all the chunk vertex arrays. Chunk meshes are only made of quads of four vertices, so their indices always follow the same pattern: 0, 1, 2, 2, 1, 3, offset by four for
+ * each quad. This buffer holds that pattern for the largest possible chunk mesh, which has less than 65536 vertices, so 16 bit indices are enough. Must only be used from the render thread.
+ */
+public class QuadIndexBuffer {
+    /**
+     * The maximum number of quads that can be drawn with the buffer.
+     */
+    public static final int MAX_QUADS = ChunkMeshBuffer.MAX_QUADS;
+    /**
+     * The type of the indices, for the draw calls.
+     */
+    public static final int INDEX_TYPE = GL11.GL_UNSIGNED_SHORT;
+    private int id = 0;
+
+    /**
+     * Creates the buffer and uploads the indices.
+     */
+    public void create() {
+        if (isCreated()) {
+            throw new IllegalStateException("Quad index buffer has already been created");
+        }
+        final ShortBuffer indices = BufferUtils.createShortBuffer(MAX_QUADS * 6);
+        for (int i = 0; i < MAX_QUADS * 4; i += 4) {
+            indices.put((short) i).put((short) (i + 1)).put((short) (i + 2));
+            indices.put((short) (i + 2)).put((short) (i + 1)).put((short) (i + 3));
+        }
+        indices.flip();
+        id = GL15.glGenBuffers();
+        GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, id);
+        GL15.glBufferData(GL15.GL_ELEMENT_ARRAY_BUFFER, indices, GL15.GL_STATIC_DRAW);
+        GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, 0);
+    }
+
+    /**
+     * Binds the buffer as the element array buffer. When a vertex array is bound, the binding becomes part of its state.
+     */
+    public void bind() {
+        GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, id);
+    }
+
+    /**
+     * Deletes the buffer. Vertex arrays still using it keep it alive until they are deleted too.
+     */
+    public void destroy() {
+        if (!isCreated()) {
+            return;
+        }
+        GL15.glDeleteBuffers(id);
+        id = 0;
+    }
+
+    /**
+     * Returns true if the buffer has been created and not destroyed yet.
+     *
+     * @return Whether or not the buffer is created
+     */
+    public boolean isCreated() {
+        return id != 0;
+    }
+
+    /**
+     * Returns the number of indices needed to draw the quads.
+     *
+     * @param quadCount The number of quads
+     * @return The index count
+     */
+    public static int getIndexCount(int quadCount) {
+        return quadCount * 6;
+    }
+}
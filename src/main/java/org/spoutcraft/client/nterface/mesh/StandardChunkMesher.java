@@ -23,123 +23,72 @@
  */
 package org.spoutcraft.client.nterface.mesh;
 
-import gnu.trove.list.TFloatList;
-import gnu.trove.list.TIntList;
-import org.spoutcraft.client.nterface.mesh.Mesh.MeshAttribute;
 import org.spoutcraft.client.universe.block.BlockFace;
-import org.spoutcraft.client.universe.block.BlockFaces;
-import org.spoutcraft.client.universe.block.material.Material;
 import org.spoutcraft.client.universe.world.Chunk;
 
 /**
- * The standard chunk mesher. Voxels are meshed as blocks. Occludes any block not visible, including the edge blocks. Can mesh a chunk with 3n^2(n+2) block access operations, n being the size of the
- * chunk.
+ * The standard chunk mesher. Voxels are meshed as blocks. Occludes any block not visible, including the edge blocks. The chunk is first copied into an {@link
+ * org.spoutcraft.client.nterface.mesh.OccupancyGrid}, which reads each block once and computes the visible faces with bit operations. The grid is reused from the thread's {@link
+ * org.spoutcraft.client.nterface.mesh.ChunkMeshContext}.
  */
 public class StandardChunkMesher implements ChunkMesher {
     @Override
-    public Mesh mesh(ChunkSnapshotGroup chunk) {
+    public boolean mesh(ChunkSnapshotGroup chunk, ChunkMeshBuffer buffer) {
         // TODO: add textures
-        final Mesh mesh = new Mesh(MeshAttribute.POSITIONS, MeshAttribute.NORMALS);
-        final TFloatList positions = mesh.getAttribute(MeshAttribute.POSITIONS);
-        final TIntList indices = mesh.getIndices();
-        int index = 0;
+        final OccupancyGrid grid = ChunkMeshContext.get().updateGrid(chunk);
+        buffer.setConnectivity(ChunkConnectivity.compute(grid));
+        // Abort at each axis if the chunk was updated, the mesh would be discarded anyway
+        if (chunk.isStale()) {
+            return false;
+        }
         // Mesh the faces on the x axis
         for (int zz = 0; zz < Chunk.BLOCKS.SIZE; zz++) {
             for (int yy = 0; yy < Chunk.BLOCKS.SIZE; yy++) {
-                Material backMaterial = chunk.getMaterial(-1, yy, zz);
                 for (int xx = 0; xx < Chunk.BLOCKS.SIZE + 1; xx++) {
-                    final Material frontMaterial = chunk.getMaterial(xx, yy, zz);
-                    final BlockFace face = getFace(backMaterial, frontMaterial, BlockFaces.NS);
-                    if (face == BlockFace.NORTH) {
-                        add(indices, index + 3, index + 2, index + 1, index + 2, index, index + 1);
-                    } else if (face == BlockFace.SOUTH) {
-                        add(indices, index + 3, index + 1, index + 2, index + 2, index + 1, index);
-                    } else {
-                        backMaterial = frontMaterial;
-                        continue;
+                    if (grid.hasFace(BlockFace.NORTH, xx, yy, zz)) {
+                        buffer.addQuad(BlockFace.NORTH, grid.getMaterial(xx, yy, zz),
+                                xx, yy + 1, zz + 1, xx, yy + 1, zz, xx, yy, zz + 1, xx, yy, zz);
+                    } else if (grid.hasFace(BlockFace.SOUTH, xx - 1, yy, zz)) {
+                        buffer.addQuad(BlockFace.SOUTH, grid.getMaterial(xx - 1, yy, zz),
+                                xx, yy + 1, zz + 1, xx, yy, zz + 1, xx, yy + 1, zz, xx, yy, zz);
                     }
-                    add(positions, xx, yy + 1, zz + 1);
-                    add(positions, xx, yy + 1, zz);
-                    add(positions, xx, yy, zz + 1);
-                    add(positions, xx, yy, zz);
-                    index += 4;
-                    backMaterial = frontMaterial;
                 }
             }
         }
+        if (chunk.isStale()) {
+            return false;
+        }
         // Mesh the faces on the y axis
         for (int xx = 0; xx < Chunk.BLOCKS.SIZE; xx++) {
             for (int zz = 0; zz < Chunk.BLOCKS.SIZE; zz++) {
-                Material backMaterial = chunk.getMaterial(xx, -1, zz);
                 for (int yy = 0; yy < Chunk.BLOCKS.SIZE + 1; yy++) {
-                    final Material frontMaterial = chunk.getMaterial(xx, yy, zz);
-                    final BlockFace face = getFace(backMaterial, frontMaterial, BlockFaces.BT);
-                    if (face == BlockFace.BOTTOM) {
-                        add(indices, index + 3, index + 2, index + 1, index + 2, index, index + 1);
-                    } else if (face == BlockFace.TOP) {
-                        add(indices, index + 3, index + 1, index + 2, index + 2, index + 1, index);
-                    } else {
-                        backMaterial = frontMaterial;
-                        continue;
+                    if (grid.hasFace(BlockFace.BOTTOM, xx, yy, zz)) {
+                        buffer.addQuad(BlockFace.BOTTOM, grid.getMaterial(xx, yy, zz),
+                                xx, yy, zz, xx + 1, yy, zz, xx, yy, zz + 1, xx + 1, yy, zz + 1);
+                    } else if (grid.hasFace(BlockFace.TOP, xx, yy - 1, zz)) {
+                        buffer.addQuad(BlockFace.TOP, grid.getMaterial(xx, yy - 1, zz),
+                                xx, yy, zz, xx, yy, zz + 1, xx + 1, yy, zz, xx + 1, yy, zz + 1);
                     }
-                    add(positions, xx, yy, zz);
-                    add(positions, xx + 1, yy, zz);
-                    add(positions, xx, yy, zz + 1);
-                    add(positions, xx + 1, yy, zz + 1);
-                    index += 4;
-                    backMaterial = frontMaterial;
                 }
             }
         }
+        if (chunk.isStale()) {
+            return false;
+        }
         // Mesh the faces on the z axis
         for (int xx = 0; xx < Chunk.BLOCKS.SIZE; xx++) {
             for (int yy = 0; yy < Chunk.BLOCKS.SIZE; yy++) {
-                Material backMaterial = chunk.getMaterial(xx, yy, -1);
                 for (int zz = 0; zz < Chunk.BLOCKS.SIZE + 1; zz++) {
-                    final Material frontMaterial = chunk.getMaterial(xx, yy, zz);
-                    final BlockFace face = getFace(backMaterial, frontMaterial, BlockFaces.EW);
-                    if (face == BlockFace.EAST) {
-                        add(indices, index + 3, index + 2, index + 1, index + 2, index, index + 1);
-                    } else if (face == BlockFace.WEST) {
-                        add(indices, index + 3, index + 1, index + 2, index + 2, index + 1, index);
-                    } else {
-                        backMaterial = frontMaterial;
-                        continue;
+                    if (grid.hasFace(BlockFace.EAST, xx, yy, zz)) {
+                        buffer.addQuad(BlockFace.EAST, grid.getMaterial(xx, yy, zz),
+                                xx, yy + 1, zz, xx + 1, yy + 1, zz, xx, yy, zz, xx + 1, yy, zz);
+                    } else if (grid.hasFace(BlockFace.WEST, xx, yy, zz - 1)) {
+                        buffer.addQuad(BlockFace.WEST, grid.getMaterial(xx, yy, zz - 1),
+                                xx, yy + 1, zz, xx, yy, zz, xx + 1, yy + 1, zz, xx + 1, yy, zz);
                     }
-                    add(positions, xx, yy + 1, zz);
-                    add(positions, xx + 1, yy + 1, zz);
-                    add(positions, xx, yy, zz);
-                    add(positions, xx + 1, yy, zz);
-                    index += 4;
-                    backMaterial = frontMaterial;
                 }
             }
         }
-        return mesh;
-    }
-
-    private BlockFace getFace(Material back, Material front, BlockFaces axis) {
-        if (back.isVisible() && !front.occludes(back, axis.get(0))) {
-            return axis.get(1);
-        }
-        if (front.isVisible() && !back.occludes(front, axis.get(1))) {
-            return axis.get(0);
-        }
-        return null;
-    }
-
-    private static void add(TFloatList list, float x, float y, float z) {
-        list.add(x);
-        list.add(y);
-        list.add(z);
-    }
-
-    private static void add(TIntList list, int i0, int i1, int i2, int i3, int i4, int i5) {
-        list.add(i0);
-        list.add(i1);
-        list.add(i2);
-        list.add(i3);
-        list.add(i4);
-        list.add(i5);
+        return true;
     }
 }
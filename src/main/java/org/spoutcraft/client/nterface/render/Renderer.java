@@ -69,6 +69,7 @@ import org.spout.renderer.lwjgl.LWJGLUtil;
 import org.spoutcraft.client.nterface.Interface;
 import org.spoutcraft.client.nterface.render.graph.RenderGraph;
 import org.spoutcraft.client.nterface.render.graph.node.LightingNode;
+import org.spoutcraft.client.nterface.render.graph.node.OcclusionCullingNode;
 import org.spoutcraft.client.nterface.render.graph.node.RenderGUINode;
 import org.spoutcraft.client.nterface.render.graph.node.RenderModelsNode;
 import org.spoutcraft.client.nterface.render.graph.node.RenderTransparentModelsNode;
@@ -77,7 +78,7 @@ import org.spoutcraft.client.nterface.render.graph.node.ShadowMappingNode;
 
 /**
  * The default renderer. Support OpenGL 2.1 and 3.2. Can render fully textured models with normal and specular mapping, ambient occlusion (SSAO), shadow mapping, Phong shading, motion blur and edge
- * detection anti-aliasing. The default OpenGL version is 3.2.
+ * detection anti-aliasing. The default OpenGL version is 3.2. Chunk models can only be rendered with 3.2, since their packed vertices are read as integer attributes.
  */
 public class Renderer {
     private static final String WINDOW_TITLE = "Spoutcraft";
@@ -96,11 +97,14 @@ public class Renderer {
     private Context context;
     // Included materials
     private Material solidMaterial;
+    private Material chunkMaterial;
+    private Material chunkBatchMaterial;
     private Material transparencyMaterial;
     // Render graph
     private RenderGraph graph;
     // Graph nodes
     private RenderModelsNode renderModelsNode;
+    private OcclusionCullingNode occlusionCullingNode;
     private ShadowMappingNode shadowMappingNode;
     private SSAONode ssaoNode;
     private LightingNode lightingNode;
@@ -156,6 +160,13 @@ public class Renderer {
         renderModelsNode = new RenderModelsNode(graph, "models");
         renderModelsNode.create();
         graph.addNode(renderModelsNode);
+        // Occlusion culling, the queries need GL30 or later
+        if (glFactory.getGLVersion() == GLVersion.GL32) {
+            occlusionCullingNode = new OcclusionCullingNode(graph, "occlusion");
+            occlusionCullingNode.connect("depths", "depths", renderModelsNode);
+            occlusionCullingNode.create();
+            graph.addNode(occlusionCullingNode);
+        }
         // Shadows
         shadowMappingNode = new ShadowMappingNode(graph, "shadows");
         shadowMappingNode.connect("normals", "vertexNormals", renderModelsNode);
@@ -211,6 +222,22 @@ public class Renderer {
         uniforms.add(new FloatUniform("specularIntensity", 0.5f));
         uniforms.add(new FloatUniform("ambientIntensity", 0.2f));
         uniforms.add(new FloatUniform("shininess", 0.15f));
+        // Chunk material, for the packed chunk vertices, only available with GL32. The solid material can't replace it, as it expects float vertex attributes
+        if (glFactory.getGLVersion() == GLVersion.GL32) {
+            chunkMaterial = new Material(graph.getProgram("chunkSolid"));
+            uniforms = chunkMaterial.getUniforms();
+            uniforms.add(new FloatUniform("diffuseIntensity", 0.8f));
+            uniforms.add(new FloatUniform("specularIntensity", 0.5f));
+            uniforms.add(new FloatUniform("ambientIntensity", 0.2f));
+            uniforms.add(new FloatUniform("shininess", 0.15f));
+            // Chunk batch material, for the chunks drawn all at once from the arena
+            chunkBatchMaterial = new Material(graph.getProgram("chunkBatch"));
+            uniforms = chunkBatchMaterial.getUniforms();
+            uniforms.add(new FloatUniform("diffuseIntensity", 0.8f));
+            uniforms.add(new FloatUniform("specularIntensity", 0.5f));
+            uniforms.add(new FloatUniform("ambientIntensity", 0.2f));
+            uniforms.add(new FloatUniform("shininess", 0.15f));
+        }
         // Transparency material
         transparencyMaterial = new Material(graph.getProgram("weightedSum"));
         uniforms = transparencyMaterial.getUniforms();
@@ -296,12 +323,9 @@ public class Renderer {
     }
 
     private void setPreviousModelMatrices() {
-        for (Model model : renderModelsNode.getModels()) {
-            model.getUniforms().getMatrix4("previousModelMatrix").set(model.getMatrix());
-        }
-        for (Model model : renderTransparentModelsNode.getModels()) {
-            model.getUniforms().getMatrix4("previousModelMatrix").set(model.getMatrix());
-        }
+        // Only the dynamic models, the chunks never move
+        renderModelsNode.updatePreviousModelMatrices();
+        renderTransparentModelsNode.updatePreviousModelMatrices();
     }
 
     private void updateFPSMonitor() {
@@ -343,6 +367,15 @@ public class Renderer {
         return renderModelsNode;
     }
 
+    /**
+     * Returns the occlusion culling node, or null if it isn't supported by the OpenGL version.
+     *
+     * @return The occlusion culling node, or null
+     */
+    public OcclusionCullingNode getOcclusionCullingNode() {
+        return occlusionCullingNode;
+    }
+
     public RenderGUINode getRenderGUINode() {
         return renderGUINode;
     }
@@ -427,6 +460,35 @@ public class Renderer {
         renderModelsNode.addModel(model);
     }
 
+    /**
+     * Adds a chunk model to be rendered as a solid. The model's vertices must use the packed format of {@link org.spoutcraft.client.nterface.mesh.ChunkMeshBuffer}, which requires GL32. Chunks never move, so the model must already be positioned.
+     *
+     * @param model The chunk model
+     * @throws IllegalStateException If the OpenGL version isn't GL32
+     */
+    public void addChunkModel(Model model) {
+        if (chunkMaterial == null) {
+            throw new IllegalStateException("Chunk rendering requires GL32, the packed chunk vertices are integer attributes");
+        }
+        model.setMaterial(chunkMaterial);
+        model.getUniforms().add(new ColorUniform("modelColor", new Color(Math.random(), Math.random(), Math.random(), 1)));
+        renderModelsNode.addStaticModel(model);
+    }
+
+    /**
+     * Adds the model drawing all the chunks from the arena, see {@link org.spoutcraft.client.nterface.mesh.ChunkArena}. Only available with GL32.
+     *
+     * @param model The chunk batch model
+     */
+    public void addChunkBatchModel(Model model) {
+        if (chunkBatchMaterial == null) {
+            throw new IllegalStateException("Chunk batching requires GL32");
+        }
+        model.setMaterial(chunkBatchMaterial);
+        model.getUniforms().add(new ColorUniform("modelColor", new Color(Math.random(), Math.random(), Math.random(), 1)));
+        renderModelsNode.addStaticModel(model);
+    }
+
     /**
      * Adds a model to be rendered as partially transparent.
      *
@@ -0,0 +1,227 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.nterface.render.graph.node;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.flowpowered.math.vector.Vector3f;
+
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL15;
+
+import org.spout.renderer.api.Camera;
+import org.spout.renderer.api.gl.Context;
+import org.spout.renderer.api.gl.Context.Capability;
+import org.spout.renderer.api.gl.FrameBuffer;
+import org.spout.renderer.api.gl.FrameBuffer.AttachmentPoint;
+import org.spout.renderer.api.gl.GLFactory;
+import org.spout.renderer.api.gl.Program;
+import org.spout.renderer.api.gl.Texture;
+import org.spout.renderer.api.gl.VertexArray;
+import org.spout.renderer.api.model.Model;
+import org.spout.renderer.api.util.MeshGenerator;
+
+import org.spoutcraft.client.nterface.render.graph.RenderGraph;
+
+/**
+ * Tests the bounding boxes of the candidate models against the depths of the rendered models, using hardware occlusion queries. The results are never waited on: they are read on the next frame by
+ * {@link #updateResults()}, if available, and a model is only reported as occluded once a query found that none of its box's samples passed the depth test. The queries of the models that are no
+ * longer candidates are deleted. Requires OpenGL 3.0 or later, and must only be used from the render thread.
+ */
+public class OcclusionCullingNode extends GraphNode {
+    // Added around the boxes, so that the geometry on their faces isn't occluded by itself
+    private static final float BOX_MARGIN = 0.25f;
+    private final Program program;
+    private final VertexArray box;
+    private final FrameBuffer frameBuffer;
+    private Texture depthsInput;
+    private final List<Model> candidates = new ArrayList<>();
+    private final Map<Model, OcclusionQuery> queries = new IdentityHashMap<>();
+    private Vector3f boxSize = new Vector3f(16, 16, 16);
+    private int frame = 0;
+
+    public OcclusionCullingNode(RenderGraph graph, String name) {
+        super(graph, name);
+        program = graph.getProgram("occlusionBox");
+        final GLFactory glFactory = graph.getGLFactory();
+        box = glFactory.createVertexArray();
+        frameBuffer = glFactory.createFrameBuffer();
+    }
+
+    @Override
+    public void create() {
+        if (isCreated()) {
+            throw new IllegalStateException("Occlusion culling stage has already been created");
+        }
+        // Create the unit box, scaled and moved by the shader
+        box.setData(MeshGenerator.generateCuboid(null, Vector3f.ONE));
+        box.create();
+        // Create the frame buffer, which only tests against the depths
+        frameBuffer.attach(AttachmentPoint.DEPTH, depthsInput);
+        frameBuffer.create();
+        // Update the state to created
+        super.create();
+    }
+
+    @Override
+    public void destroy() {
+        checkCreated();
+        for (OcclusionQuery query : queries.values()) {
+            GL15.glDeleteQueries(query.id);
+        }
+        queries.clear();
+        box.destroy();
+        frameBuffer.destroy();
+        super.destroy();
+    }
+
+    @Override
+    public void render() {
+        checkCreated();
+        frame++;
+        if (!candidates.isEmpty()) {
+            renderQueries();
+        }
+        // Delete the queries of the models that are no longer candidates
+        for (Iterator<OcclusionQuery> iterator = queries.values().iterator(); iterator.hasNext(); ) {
+            final OcclusionQuery query = iterator.next();
+            if (query.frame != frame) {
+                GL15.glDeleteQueries(query.id);
+                iterator.remove();
+            }
+        }
+    }
+
+    private void renderQueries() {
+        final Context context = graph.getContext();
+        final Camera camera = ((RenderModelsNode) graph.getNode("models")).getCamera();
+        final Vector3f cameraPosition = camera.getPosition();
+        // Only test the depths, the boxes must not be written or culled
+        final int depthFunction = GL11.glGetInteger(GL11.GL_DEPTH_FUNC);
+        final boolean cullFace = GL11.glIsEnabled(GL11.GL_CULL_FACE);
+        frameBuffer.bind();
+        context.setDepthMask(false);
+        context.disableCapability(Capability.CULL_FACE);
+        GL11.glColorMask(false, false, false, false);
+        GL11.glDepthFunc(GL11.GL_LEQUAL);
+        program.use();
+        program.setUniform("viewMatrix", camera.getViewMatrix());
+        program.setUniform("projectionMatrix", camera.getProjectionMatrix());
+        program.setUniform("boxSize", boxSize.add(BOX_MARGIN * 2, BOX_MARGIN * 2, BOX_MARGIN * 2));
+        for (Model model : candidates) {
+            OcclusionQuery query = queries.get(model);
+            if (query == null) {
+                query = new OcclusionQuery(GL15.glGenQueries());
+                queries.put(model, query);
+            }
+            query.frame = frame;
+            final Vector3f min = model.getPosition().sub(BOX_MARGIN, BOX_MARGIN, BOX_MARGIN);
+            final Vector3f max = model.getPosition().add(boxSize).add(BOX_MARGIN, BOX_MARGIN, BOX_MARGIN);
+            if (cameraPosition.getX() >= min.getX() - 1 && cameraPosition.getY() >= min.getY() - 1 && cameraPosition.getZ() >= min.getZ() - 1
+                    && cameraPosition.getX() <= max.getX() + 1 && cameraPosition.getY() <= max.getY() + 1 && cameraPosition.getZ() <= max.getZ() + 1) {
+                // The box would be clipped by the near plane, it can't be tested, but it's visible anyways
+                query.occluded = false;
+                continue;
+            }
+            if (query.pending) {
+                // Still waiting on the last result, don't discard it by reusing the query
+                continue;
+            }
+            program.setUniform("boxPosition", min);
+            GL15.glBeginQuery(GL15.GL_SAMPLES_PASSED, query.id);
+            box.draw();
+            GL15.glEndQuery(GL15.GL_SAMPLES_PASSED);
+            query.pending = true;
+        }
+        // Restore the state for the next stages
+        GL11.glDepthFunc(depthFunction);
+        GL11.glColorMask(true, true, true, true);
+        if (cullFace) {
+            context.enableCapability(Capability.CULL_FACE);
+        }
+        context.setDepthMask(true);
+        frameBuffer.unbind();
+    }
+
+    /**
+     * Reads the results of the queries issued on the previous frames, without waiting for those that aren't available yet. Models with unavailable results keep their last state. Should be called
+     * before {@link #isOccluded(org.spout.renderer.api.model.Model)}, once per frame.
+     */
+    public void updateResults() {
+        for (OcclusionQuery query : queries.values()) {
+            if (query.pending && GL15.glGetQueryObjecti(query.id, GL15.GL_QUERY_RESULT_AVAILABLE) != GL11.GL_FALSE) {
+                query.occluded = GL15.glGetQueryObjecti(query.id, GL15.GL_QUERY_RESULT) == 0;
+                query.pending = false;
+            }
+        }
+    }
+
+    /**
+     * Returns true if the last available result for the model found its box to be entirely hidden. Models that weren't tested yet aren't occluded.
+     *
+     * @param model The model to check
+     * @return Whether or not the model is occluded
+     */
+    public boolean isOccluded(Model model) {
+        final OcclusionQuery query = queries.get(model);
+        return query != null && query.occluded;
+    }
+
+    /**
+     * Sets the models to test on the next frame. Their positions are the minimum corners of their boxes. An empty collection deletes all the queries.
+     *
+     * @param models The models to test
+     */
+    public void setCandidates(Collection<? extends Model> models) {
+        candidates.clear();
+        candidates.addAll(models);
+    }
+
+    @Setting
+    public void setBoxSize(Vector3f boxSize) {
+        this.boxSize = boxSize;
+    }
+
+    @Input("depths")
+    public void setDepthsInput(Texture texture) {
+        texture.checkCreated();
+        depthsInput = texture;
+    }
+
+    private static class OcclusionQuery {
+        private final int id;
+        private int frame;
+        private boolean pending = false;
+        private boolean occluded = false;
+
+        private OcclusionQuery(int id) {
+            this.id = id;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.nterface.render.graph.node;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.spout.renderer.api.data.Uniform.Matrix4Uniform;
+import org.spout.renderer.api.model.Model;
+
+/**
+ * Holds the previous model matrix uniforms of the models of a node. Only those of the dynamic models are updated each frame, the static ones are set once.
+ */
+class PreviousModelMatrices {
+    private final Map<Model, Matrix4Uniform> dynamicModels = new IdentityHashMap<>();
+
+    /**
+     * Adds the previous model matrix uniform to a model, set to its current matrix, and updates it every frame if the model is dynamic.
+     *
+     * @param model The model to add the uniform to
+     * @param dynamic Whether or not the model can move
+     */
+    void add(Model model, boolean dynamic) {
+        final Matrix4Uniform previousModelMatrix = new Matrix4Uniform("previousModelMatrix", model.getMatrix());
+        model.getUniforms().add(previousModelMatrix);
+        if (dynamic) {
+            dynamicModels.put(model, previousModelMatrix);
+        }
+    }
+
+    void remove(Model model) {
+        dynamicModels.remove(model);
+    }
+
+    void clear() {
+        dynamicModels.clear();
+    }
+
+    /**
+     * Sets the previous model matrices of the dynamic models to their current ones.
+     */
+    void update() {
+        for (Entry<Model, Matrix4Uniform> entry : dynamicModels.entrySet()) {
+            entry.getValue().set(entry.getKey().getMatrix());
+        }
+    }
+}
@@ -29,7 +29,6 @@ import java.util.List;
 import org.spout.renderer.api.Camera;
 import org.spout.renderer.api.Pipeline;
 import org.spout.renderer.api.Pipeline.PipelineBuilder;
-import org.spout.renderer.api.data.Uniform.Matrix4Uniform;
 import org.spout.renderer.api.gl.FrameBuffer;
 import org.spout.renderer.api.gl.FrameBuffer.AttachmentPoint;
 import org.spout.renderer.api.gl.GLFactory;
@@ -53,6 +52,7 @@ public class RenderModelsNode extends GraphNode {
     private final Texture vertexNormalsOutput;
     private final Texture materialsOutput;
     private final List<Model> models = new ArrayList<>();
+    private final PreviousModelMatrices previousModelMatrices = new PreviousModelMatrices();
     private final Camera camera;
     private Pipeline pipeline;
 
@@ -165,12 +165,22 @@ public class RenderModelsNode extends GraphNode {
     }
 
     /**
-     * Adds a model to the renderer.
+     * Adds a model to the renderer. Its previous model matrix is updated every frame by {@link #updatePreviousModelMatrices()}.
      *
      * @param model The model to add
      */
     public void addModel(Model model) {
-        model.getUniforms().add(new Matrix4Uniform("previousModelMatrix", model.getMatrix()));
+        previousModelMatrices.add(model, true);
+        models.add(model);
+    }
+
+    /**
+     * Adds a model that never moves to the renderer. Its previous model matrix is set once to its current one, so it must already be positioned.
+     *
+     * @param model The model to add
+     */
+    public void addStaticModel(Model model) {
+        previousModelMatrices.add(model, false);
         models.add(model);
     }
 
@@ -181,6 +191,7 @@ public class RenderModelsNode extends GraphNode {
      */
     public void removeModel(Model model) {
         models.remove(model);
+        previousModelMatrices.remove(model);
     }
 
     /**
@@ -188,6 +199,14 @@ public class RenderModelsNode extends GraphNode {
      */
     public void clearModels() {
         models.clear();
+        previousModelMatrices.clear();
+    }
+
+    /**
+     * Sets the previous model matrices of the dynamic models to their current ones. Should be called after rendering, once per frame.
+     */
+    public void updatePreviousModelMatrices() {
+        previousModelMatrices.update();
     }
 
     public List<Model> getModels() {
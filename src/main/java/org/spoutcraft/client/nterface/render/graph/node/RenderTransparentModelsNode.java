@@ -30,7 +30,6 @@ import java.util.List;
 import org.spout.renderer.api.Material;
 import org.spout.renderer.api.Pipeline;
 import org.spout.renderer.api.Pipeline.PipelineBuilder;
-import org.spout.renderer.api.data.Uniform.Matrix4Uniform;
 import org.spout.renderer.api.gl.Context.BlendFunction;
 import org.spout.renderer.api.gl.Context.Capability;
 import org.spout.renderer.api.gl.FrameBuffer;
@@ -55,6 +54,7 @@ public class RenderTransparentModelsNode extends GraphNode {
     private Texture depthsInput;
     private Texture colorsInput;
     private final List<Model> models = new ArrayList<>();
+    private final PreviousModelMatrices previousModelMatrices = new PreviousModelMatrices();
     private Pipeline pipeline;
 
     public RenderTransparentModelsNode(RenderGraph graph, String name) {
@@ -139,12 +139,12 @@ public class RenderTransparentModelsNode extends GraphNode {
     }
 
     /**
-     * Adds a model to the renderer.
+     * Adds a model to the renderer. Its previous model matrix is updated every frame by {@link #updatePreviousModelMatrices()}.
      *
      * @param model The model to add
      */
     public void addModel(Model model) {
-        model.getUniforms().add(new Matrix4Uniform("previousModelMatrix", model.getMatrix()));
+        previousModelMatrices.add(model, true);
         models.add(model);
     }
 
@@ -155,6 +155,7 @@ public class RenderTransparentModelsNode extends GraphNode {
      */
     public void removeModel(Model model) {
         models.remove(model);
+        previousModelMatrices.remove(model);
     }
 
     /**
@@ -162,6 +163,14 @@ public class RenderTransparentModelsNode extends GraphNode {
      */
     public void clearModels() {
         models.clear();
+        previousModelMatrices.clear();
+    }
+
+    /**
+     * Sets the previous model matrices of the dynamic models to their current ones. Should be called after rendering, once per frame.
+     */
+    public void updatePreviousModelMatrices() {
+        previousModelMatrices.update();
     }
 
     public List<Model> getModels() {
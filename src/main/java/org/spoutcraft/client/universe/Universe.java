@@ -23,8 +23,9 @@
  */
 package org.spoutcraft.client.universe;
 
-import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -32,14 +33,16 @@ import java.util.Random;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.zip.DataFormatException;
-import java.util.zip.Inflater;
 
+import com.flowpowered.commons.store.block.AtomicBlockStore;
 import com.flowpowered.commons.ticking.TickingElement;
 import com.flowpowered.math.vector.Vector3i;
 import com.flowpowered.networking.util.AnnotatedMessageHandler;
 import com.flowpowered.networking.util.AnnotatedMessageHandler.Handle;
 
+import gnu.trove.map.TLongLongMap;
+import gnu.trove.map.hash.TLongLongHashMap;
+
 import org.spoutcraft.client.Game;
 import org.spoutcraft.client.game.Difficulty;
 import org.spoutcraft.client.game.Dimension;
@@ -55,8 +58,13 @@ import org.spoutcraft.client.network.message.play.PositionLookMessage;
 import org.spoutcraft.client.network.message.play.RespawnMessage;
 import org.spoutcraft.client.network.message.play.SpawnPositionMessage;
 import org.spoutcraft.client.universe.block.material.Materials;
+import org.spoutcraft.client.universe.decode.ChunkColumnDecoder;
+import org.spoutcraft.client.universe.decode.ChunkDecodePipeline;
+import org.spoutcraft.client.universe.decode.DecodedChunkColumn;
+import org.spoutcraft.client.universe.decode.DecodedChunkColumnsMessage;
 import org.spoutcraft.client.universe.snapshot.WorldSnapshot;
 import org.spoutcraft.client.universe.world.Chunk;
+import org.spoutcraft.client.universe.world.ChunkColumn;
 import org.spoutcraft.client.universe.world.World;
 
 /**
@@ -64,16 +72,17 @@ import org.spoutcraft.client.universe.world.World;
  */
 public class Universe extends TickingElement {
     private static final int TPS = 20;
-    // Chunk data handling
-    private static final int MAX_CHUNK_COLUMN_SECTIONS = 16;
-    private static final byte[] UNLOAD_CHUNKS_IN_COLUMN = {0x78, (byte) 0x9C, 0x63, 0x64, 0x1C, (byte) 0xD9, 0x00, 0x00, (byte) 0x81, (byte) 0x80, 0x01, 0x01};
-    private static final Inflater INFLATER = new Inflater();
     private final Game game;
     private final Map<UUID, World> worlds = new ConcurrentHashMap<>();
     private final Map<UUID, WorldSnapshot> worldSnapshots = new ConcurrentHashMap<>();
     private final Map<String, UUID> worldIDsByName = new ConcurrentHashMap<>();
     private final AtomicReference<World> activeWorld = new AtomicReference<>(null);
     private final AnnotatedMessageHandler messageHandler;
+    private ChunkDecodePipeline decodePipeline;
+    // The sequence number of the latest decode request for each column being decoded, by column key
+    private final TLongLongMap pendingColumns = new TLongLongHashMap();
+    // The chunk messages the decode pipeline had no room for, in order, offered again every tick before reading any new message
+    private final Deque<OverflowedMessage> decodeOverflow = new ArrayDeque<>();
 
     public Universe(Game game) {
         super("universe", TPS);
@@ -85,6 +94,8 @@ public class Universe extends TickingElement {
     public void onStart() {
         game.getLogger().info("Starting universe");
 
+        decodePipeline = new ChunkDecodePipeline(game.getLogger());
+
         // TEST CODE
         final short[] chunkIDs = new short[Chunk.BLOCKS.VOLUME];
         Arrays.fill(chunkIDs, Materials.SOLID.getID());
@@ -103,11 +114,15 @@ public class Universe extends TickingElement {
         // TODO: Optimization needed here, process so many per tick?
         final Network network = game.getNetwork();
 
+        // Offer the chunk messages the decode pipeline had no room for first, the following messages stay in the channel until they're all queued
+        offerDecodeOverflow();
         final Iterator<ChannelMessage> messages = network.getChannel(Channel.UNIVERSE);
-        while (messages.hasNext()) {
+        while (decodeOverflow.isEmpty() && messages.hasNext()) {
             messageHandler.handle(messages.next());
             messages.remove();
         }
+        // Install the columns decoded since the last tick all at once
+        installDecodedColumns();
 
         // TEST CODE
         final Random random = new Random();
@@ -134,6 +149,19 @@ public class Universe extends TickingElement {
     public void onStop() {
         game.getLogger().info("Stopping universe");
 
+        // Release the payloads of the chunk messages that were never handled
+        final Iterator<ChannelMessage> messages = game.getNetwork().getChannel(Channel.UNIVERSE);
+        while (messages.hasNext()) {
+            final ChannelMessage message = messages.next();
+            messages.remove();
+            releaseChunkMessage(message);
+        }
+        for (OverflowedMessage overflowed : decodeOverflow) {
+            releaseChunkMessage(overflowed.message);
+        }
+        decodeOverflow.clear();
+        decodePipeline.shutdown();
+        pendingColumns.clear();
         worlds.clear();
         updateSnapshots();
     }
@@ -254,34 +282,17 @@ public class Universe extends TickingElement {
      */
     @Handle
     private void handleChunkData(ChunkDataMessage message) {
+        final long key = getColumnKey(message.getColumnX(), message.getColumnZ());
         // Check if we should remove a column of chunks
-        if (Arrays.equals(UNLOAD_CHUNKS_IN_COLUMN, message.getCompressedData())) {
-            activeWorld.get().removeChunkColumn(message.getColumnX(), message.getColumnZ(), 0, MAX_CHUNK_COLUMN_SECTIONS);
+        if (ChunkColumnDecoder.isUnloadColumn(message)) {
+            message.release();
+            // Discard any column still being decoded, it's obsolete
+            pendingColumns.remove(key);
+            activeWorld.get().removeChunkColumn(message.getColumnX(), message.getColumnZ());
         } else {
-            final byte[][][] data = new byte[MAX_CHUNK_COLUMN_SECTIONS][][];
-            try {
-
-                // Find out how many non-air chunks we have in the column and add on a data segment for it
-                int nonEmptyColumns = 0;
-                for (int i = 0; i < MAX_CHUNK_COLUMN_SECTIONS; i++) {
-                    if ((message.getPrimaryBitMap() >> i & 1) != 0) {
-                        data[i] = new byte[5][];
-                        nonEmptyColumns++;
-                    }
-                }
-                // Length = nonEmptyColumns * (Blocks + (Metadata + Additional Data + Light + Skylight))
-                int actualCompressedDataLength = nonEmptyColumns * (Chunk.BLOCKS.VOLUME + (Chunk.BLOCKS.HALF_VOLUME * 4));
-
-                // If ground up continuous, biome data is sent per column. We need to add on to the data size for this.
-                if (message.isGroundUpContinuous()) {
-                    actualCompressedDataLength += Chunk.BLOCKS.AREA;
-                }
-
-                decompressChunkData(data, message.isGroundUpContinuous(), true, actualCompressedDataLength, message.getCompressedData());
-            } catch (IOException e) {
-                System.out.println(e);
-            }
-            populateChunks(message.getColumnX(), message.getColumnZ(), data);
+            final long sequence = decodePipeline.nextSequence();
+            pendingColumns.put(key, sequence);
+            queueDecode(message, sequence);
         }
     }
 
@@ -292,221 +303,123 @@ public class Universe extends TickingElement {
      */
     @Handle
     private void handleChunkDataBulk(ChunkDataBulkMessage message) {
-        int position = 0;
-
+        final long sequence = decodePipeline.nextSequence();
         for (int i = 0; i < message.getColumnCount(); i++) {
-            byte[][][] data = new byte[MAX_CHUNK_COLUMN_SECTIONS][][];
-
-            // Find out how many non-air chunks we have in the column and add on a data segment for it
-            int nonEmptyPrimaryColumns = 0;
-            int nonEmptyAdditionalColumns = 0;
-            for (int j = 0; i < MAX_CHUNK_COLUMN_SECTIONS; j++) {
-                if ((message.getPrimaryBitMaps()[i] >> j & 1) != 0) {
-                    nonEmptyAdditionalColumns++;
-                    data[j] = new byte[5][];
-                }
-                nonEmptyAdditionalColumns += message.getAdditionalDataBitMaps()[i] >> j & 1;
-            }
-
-            // Length = nonEmptyPrimaryColumns * (Blocks + (Metadata + Light + (optionally) SkyLight)) + Biome + (nonEmptyAdditionalDataColumns)
-            int actualCompressedDataLength = nonEmptyPrimaryColumns * (Chunk.BLOCKS.VOLUME + (Chunk.BLOCKS.HALF_VOLUME * (message.hasSkyLight() ? 3 : 2))) + Chunk.BLOCKS.AREA + (nonEmptyAdditionalColumns * Chunk.BLOCKS.HALF_VOLUME);
-
-            try {
-                decompressChunkData(data, true, message.hasSkyLight(), position, actualCompressedDataLength, message.getCompressedData());
-                position += actualCompressedDataLength;
-            } catch (IOException e) {
-                System.out.println(e);
-            }
-            populateChunks(message.getColumnXs()[i], message.getColumnZs()[i], data);
+            pendingColumns.put(getColumnKey(message.getColumnXs()[i], message.getColumnZs()[i]), sequence);
         }
+        queueDecode(message, sequence);
     }
 
-    private void decompressChunkData(byte[][][] toFill, boolean groundUpContinuous, boolean hasSkyLight, int length, byte[] compressedData) throws IOException {
-        decompressChunkData(toFill, groundUpContinuous, hasSkyLight, 0, length, compressedData);
+    /**
+     * Handles a {@link org.spoutcraft.client.universe.decode.DecodedChunkColumnsMessage}, installing the columns right away.
+     *
+     * @param message See {@link org.spoutcraft.client.universe.decode.DecodedChunkColumnsMessage}
+     */
+    @Handle
+    private void handleDecodedChunkColumns(DecodedChunkColumnsMessage message) {
+        final World world = activeWorld.get();
+        for (DecodedChunkColumn column : message.getColumns()) {
+            // Discard any older column still being decoded by the pipeline
+            pendingColumns.remove(getColumnKey(column.getX(), column.getZ()));
+            installColumn(world, column);
+        }
     }
 
     /**
-     * Decompresses the raw compressed data from the server into the provided 3D array that comprises:
-     * <p/>
-     * Section        - The section of the column, ground up
-     * ChunkDataIndex - See {@link org.spoutcraft.client.universe.Universe.ChunkDataIndex}
-     * data           - decompressed data as a byte
-     * @param groundUpContinuous True if this is the entire column, false if not. Used to determine if biome data is included
-     * @param compressedData Compressed data from the server
-     * @param hasSkyLight True if the compressed data has sky light, only {@link org.spoutcraft.client.network.message.play.ChunkDataBulkMessage}s can not provide this
-     * @throws IOException If the chunk's data is corrupted during inflate or if all bytes are not decompressed
+     * Queues the chunk message in the decode pipeline, or keeps it for the next tick if the pipeline is full or has older messages waiting to be queued.
+     *
+     * @param message The chunk data or chunk data bulk message
+     * @param sequence The sequence number of the message
      */
-    private void decompressChunkData(byte[][][] toFill, boolean groundUpContinuous, boolean hasSkyLight, int offset, int length, byte[] compressedData) throws IOException {
-        // Step 1 - Decompress the data
-        final byte[] decompressedData = new byte[length];
-        INFLATER.setInput(compressedData, offset, length);
-
-        try {
-            INFLATER.inflate(decompressedData);
-        } catch (DataFormatException e) {
-            throw new IOException("Chunk data is corrupted!", e);
-        } finally {
-            INFLATER.end();
+    private void queueDecode(ChannelMessage message, long sequence) {
+        if (!decodeOverflow.isEmpty() || !offerDecode(message, sequence)) {
+            decodeOverflow.add(new OverflowedMessage(message, sequence));
         }
+    }
 
-        // Step 2 - Build data array
-        for (final byte[][] section : toFill) {
-            if (section == null) {
-                continue;
-            }
-
-            int index = 0;
-
-            // Step 2a. - Fill Block ids
-            section[ChunkDataIndex.BLOCK_ID.value()] = new byte[Chunk.BLOCKS.VOLUME];
-            System.arraycopy(decompressedData, 0, section[ChunkDataIndex.BLOCK_ID.value()], 0, Chunk.BLOCKS.VOLUME);
-
-            index += Chunk.BLOCKS.VOLUME;
-
-            // Step 2b. - Fill Block metadata
-            section[ChunkDataIndex.BLOCK_METADATA.value()] = new byte[Chunk.BLOCKS.VOLUME];
-            fillHalfByteDataArray(section, ChunkDataIndex.BLOCK_METADATA, decompressedData, index, Chunk.BLOCKS.HALF_VOLUME);
-
-            index += Chunk.BLOCKS.HALF_VOLUME;
-
-            // Step 2c. - Fill Block light
-            section[ChunkDataIndex.BLOCK_LIGHT.value()] = new byte[Chunk.BLOCKS.VOLUME];
-            fillHalfByteDataArray(section, ChunkDataIndex.BLOCK_LIGHT, decompressedData, index, Chunk.BLOCKS.HALF_VOLUME);
-
-            index += Chunk.BLOCKS.HALF_VOLUME;
-
-            // Step 2d. - Fill Block additional data
-            //TODO Official Minecraft doesn't use this as it simply lets mods go past 256 block ids, should we support it?
-            section[ChunkDataIndex.BLOCK_ADDITIONAL_DATA.value()] = new byte[Chunk.BLOCKS.VOLUME];
-            Arrays.fill(section[ChunkDataIndex.BLOCK_ADDITIONAL_DATA.value()], (byte) 0);
-
-            index += Chunk.BLOCKS.HALF_VOLUME;
-
-            // Step 2e. - Fill Block sky light
-            section[ChunkDataIndex.BLOCK_SKY_LIGHT.value()] = new byte[Chunk.BLOCKS.VOLUME];
+    /**
+     * Offers the messages kept by {@link #queueDecode(org.spoutcraft.client.network.message.ChannelMessage, long)} to the decode pipeline again, in order, until it's full.
+     */
+    private void offerDecodeOverflow() {
+        OverflowedMessage overflowed;
+        while ((overflowed = decodeOverflow.peek()) != null && offerDecode(overflowed.message, overflowed.sequence)) {
+            decodeOverflow.poll();
+        }
+    }
 
-            if (hasSkyLight) {
-                fillHalfByteDataArray(section, ChunkDataIndex.BLOCK_SKY_LIGHT, decompressedData, index, Chunk.BLOCKS.HALF_VOLUME);
-            } else {
-                Arrays.fill(section[ChunkDataIndex.BLOCK_SKY_LIGHT.value()], (byte) 0);
-            }
+    private boolean offerDecode(ChannelMessage message, long sequence) {
+        if (message instanceof ChunkDataMessage) {
+            return decodePipeline.offer((ChunkDataMessage) message, sequence);
+        }
+        return decodePipeline.offer((ChunkDataBulkMessage) message, sequence);
+    }
 
-            if (groundUpContinuous) {
-                index += Chunk.BLOCKS.HALF_VOLUME;
-                //TODO Handle Biomes later as they are unique
-            }
+    private static void releaseChunkMessage(ChannelMessage message) {
+        if (message instanceof ChunkDataMessage) {
+            ((ChunkDataMessage) message).release();
+        } else if (message instanceof ChunkDataBulkMessage) {
+            ((ChunkDataBulkMessage) message).release();
         }
     }
 
     /**
-     * Takes a byte array and splits each byte into two values.
-     * <p/>
-     * This is used in ChunkData to pull out the data provided for metadata, light, additional data, and skylight.
-     *
-     * @param sectionData The byte 2D array of the section of the column
-     * @param index See {@link org.spoutcraft.client.universe.Universe.ChunkDataIndex}
-     * @param decompressedData The byte array of decompressed data
-     * @param startIndex Where to start reading data in the decompressed data array
-     * @param length How much to read
+     * Installs all the columns decoded by the pipeline since the last call in the active world.
      */
-    private void fillHalfByteDataArray(byte[][] sectionData, ChunkDataIndex index, byte[] decompressedData, int startIndex, int length) {
-        int position = 0;
-        for (int i = startIndex; i < startIndex + length; i++) {
-            final byte left = (byte) ((decompressedData[i] >> 4) & 0xF);
-            final byte right = (byte) (decompressedData[i] & 0xF);
-
-            sectionData[index.value()][position++] = left;
-            sectionData[index.value()][position++] = right;
+    private void installDecodedColumns() {
+        final World world = activeWorld.get();
+        DecodedChunkColumn column;
+        while ((column = decodePipeline.poll()) != null) {
+            final long key = getColumnKey(column.getX(), column.getZ());
+            // Discard the column if a newer one was queued or if it was unloaded since
+            if (pendingColumns.get(key) != column.getSequence()) {
+                continue;
+            }
+            pendingColumns.remove(key);
+            installColumn(world, column);
         }
     }
 
     /**
-     * Populates all non-air {@link Chunk}s in the column.
-     * <p/>
-     * Any chunks that exist in the {@link org.spoutcraft.client.universe.world.World} will be replaced.
+     * Installs the column in the world. If the column is ground up continuous, it replaces any existing column entirely. Otherwise the decoded sections replace the existing chunks at the same
+     * positions in the existing column.
      *
-     * @param columnX The column's x coordinate
-     * @param columnZ The column's z coordinate
-     * @param data The byte 3D array containing section, {@link org.spoutcraft.client.universe.Universe.ChunkDataIndex}, and byte (data)
+     * @param world The world to install the column in
+     * @param column The column to install
      */
-    private void populateChunks(int columnX, int columnZ, byte[][][] data) {
-        final int baseX = columnX >> Chunk.BLOCKS.BITS;
-        final int baseZ = columnZ >> Chunk.BLOCKS.BITS;
-
-        for (int i = 0; i < MAX_CHUNK_COLUMN_SECTIONS; i++) {
-            if (data[i] == null) {
-                continue;
-            }
-            int baseY = i << Chunk.BLOCKS.BITS;
-            for (int xx = 0; xx < Chunk.BLOCKS.SIZE; xx++) {
-                for (int yy = 0; yy < Chunk.BLOCKS.SIZE; yy++) {
-                    for (int zz = 0; zz < Chunk.BLOCKS.SIZE; zz++) {
-                        int x = xx + baseX;
-                        int y = yy + baseY;
-                        int z = zz + baseZ;
-
-                        //TODO Test Code, restore the commented out code once we have all materials in place!
-                        //final short[] blockIds = toShort(data[i][ChunkDataIndex.BLOCK_ID.value()]);
-                        final byte[] rawIds = data[i][ChunkDataIndex.BLOCK_ID.value()];
-                        final short[] blockIds = new short[rawIds.length];
-                        for (int idIndex = 0; idIndex < rawIds.length; idIndex++) {
-                            if (rawIds[idIndex] != (byte) 0) {
-                                blockIds[idIndex] = Materials.SOLID.getID();
-                            } else {
-                                blockIds[idIndex] = Materials.AIR.getID();
-                            }
-                        }
-                        final short[] blockData = new short[Chunk.BLOCKS.VOLUME];
-                        for (int d = 0; i < blockData.length; i++) {
-                            // final block data order: 00MM-BB-SS (M = metadata, B = block light, S = sky light)
-                            blockData[i] = (short) (((data[i][ChunkDataIndex.BLOCK_METADATA.value()][d] & 0xF) << 8)
-                                    | ((data[i][ChunkDataIndex.BLOCK_LIGHT.value()][d] & 0xF) << 4)
-                                    | ((data[i][ChunkDataIndex.BLOCK_SKY_LIGHT.value()][d] & 0xF)));
-                        }
-                        activeWorld.get().setChunk(new Chunk(activeWorld.get(), new Vector3i(x, y, z), blockIds, blockData));
-                    }
-                }
+    private void installColumn(World world, DecodedChunkColumn column) {
+        final int x = column.getX();
+        final int z = column.getZ();
+        ChunkColumn chunkColumn = column.isGroundUpContinuous() ? null : world.getChunkColumn(x, z);
+        final boolean newColumn = chunkColumn == null;
+        if (newColumn) {
+            chunkColumn = new ChunkColumn(world, x, z);
+        }
+        for (int y = 0; y < ChunkColumn.HEIGHT; y++) {
+            final AtomicBlockStore section = column.getSection(y);
+            if (section != null) {
+                chunkColumn.setChunk(new Chunk(world, new Vector3i(x, y, z), section));
             }
         }
+        if (column.getBiomes() != null) {
+            chunkColumn.setBiomes(column.getBiomes());
+        }
+        if (newColumn) {
+            // Replace the whole column in a single operation
+            world.setChunkColumn(chunkColumn);
+        }
     }
 
-    private static short[] toShort(byte[] a) {
-        final short[] b = new short[a.length];
-        for (int i = 0; i < a.length; i++) {
-            b[i] = a[i];
-        }
-        return b;
+    private static long getColumnKey(int x, int z) {
+        return (long) x << 32 | z & 0xffffffffL;
     }
 
-    private static enum ChunkDataIndex {
-        /**
-         * First index is {@link org.spoutcraft.client.universe.block.material.Material} type, whole byte
-         */
-        BLOCK_ID(0),
-        /**
-         * Second index is {@link org.spoutcraft.client.universe.block.Block} metadata, half byte
-         */
-        BLOCK_METADATA(1),
-        /**
-         * Third index is {@link org.spoutcraft.client.universe.block.Block} light values, half byte
-         */
-        BLOCK_LIGHT(2),
-        /**
-         * Fourth index is {@link org.spoutcraft.client.universe.block.Block} additional data, half byte and should always be 0
-         */
-        BLOCK_ADDITIONAL_DATA(3),
-        /**
-         * Fifth index is {@link org.spoutcraft.client.universe.block.Block} sky light, half byte
-         */
-        BLOCK_SKY_LIGHT(4);
-        private final int value;
-
-        ChunkDataIndex(int value) {
-            this.value = value;
-        }
+    private static class OverflowedMessage {
+        private final ChannelMessage message;
+        private final long sequence;
 
-        public int value() {
-            return value;
+        private OverflowedMessage(ChannelMessage message, long sequence) {
+            this.message = message;
+            this.sequence = sequence;
         }
     }
 }
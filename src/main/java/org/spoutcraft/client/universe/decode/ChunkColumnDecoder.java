@@ -0,0 +1,246 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.universe.decode;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import com.flowpowered.commons.store.block.AtomicBlockStore;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+
+import org.spoutcraft.client.network.message.play.ChunkDataBulkMessage;
+import org.spoutcraft.client.network.message.play.ChunkDataMessage;
+import org.spoutcraft.client.universe.block.material.Materials;
+import org.spoutcraft.client.universe.world.Chunk;
+import org.spoutcraft.client.universe.world.ChunkColumn;
+
+/**
+ * Decodes the compressed chunk data sent by the server into {@link org.spoutcraft.client.universe.decode.DecodedChunkColumn}s. Decoding is done in three stages: the data is inflated, split into the
+ * section arrays and finally used to build the section block stores. This class holds no state and can be used from any number of threads at once: the
+ * inflater and scratch arrays come from a {@link org.spoutcraft.client.universe.decode.ChunkDecodeContext} confined to the calling thread.
+ * <p/>
+ * The inflated data of a column contains, for all the sections in the primary bit map, the block ID arrays (one byte per block), followed by the metadata arrays, the block light arrays and the
+ * (optional) sky light arrays (half a byte per block each). These are followed by the additional data arrays for the sections in the additional data bit map (half a byte per block) and finally by
+ * the biomes (one byte per block column) if the column is ground up continuous.
+ */
+public class ChunkColumnDecoder {
+    /**
+     * The maximum length of the inflated data for a single column: all sections with sky light and additional data, plus the biomes.
+     */
+    public static final int MAX_COLUMN_LENGTH = ChunkColumn.HEIGHT * (Chunk.BLOCKS.VOLUME + Chunk.BLOCKS.HALF_VOLUME * 4) + Chunk.BLOCKS.AREA;
+    // The IDs of the test materials that the block IDs are mapped to
+    private static final int AIR_ID = Materials.AIR.getID() & 0xffff;
+    private static final int SOLID_ID = Materials.SOLID.getID() & 0xffff;
+    // The compressed data sent by the server to unload a column
+    private static final ByteBuf UNLOAD_COLUMN_DATA = Unpooled.unmodifiableBuffer(Unpooled.wrappedBuffer(new byte[] {
+            0x78, (byte) 0x9C, 0x63, 0x64, 0x1C, (byte) 0xD9, 0x00, 0x00, (byte) 0x81, (byte) 0x80, 0x01, 0x01
+    }));
+
+    /**
+     * Decodes the column from a {@link org.spoutcraft.client.network.message.play.ChunkDataMessage}.
+     *
+     * @param message The message to decode
+     * @param sequence The sequence number of the decode request
+     * @return The decoded column
+     * @throws IOException If the data is corrupted or doesn't have the expected length
+     */
+    public DecodedChunkColumn decode(ChunkDataMessage message, long sequence) throws IOException {
+        final ChunkDecodeContext context = ChunkDecodeContext.get();
+        // Stage 1 - Inflate the data
+        final byte[] data = context.getData();
+        final Inflater inflater = context.resetInflater();
+        final ByteBuf input = message.getCompressedData().duplicate();
+        final int length = inflate(inflater, input, context.getInput(), data, data.length);
+        if (!inflater.finished()) {
+            throw new IOException("Chunk data is truncated or larger than a full column");
+        }
+        // The message doesn't tell us if the column has sky light, but we can deduce it from the length
+        final short primaryBitMap = message.getPrimaryBitMap();
+        final short additionalDataBitMap = message.getAdditionalDataBitMap();
+        final boolean groundUpContinuous = message.isGroundUpContinuous();
+        final boolean hasSkyLight = length == getColumnLength(primaryBitMap, additionalDataBitMap, groundUpContinuous, true);
+        if (!hasSkyLight && length != getColumnLength(primaryBitMap, additionalDataBitMap, groundUpContinuous, false)) {
+            throw new IOException("Chunk data doesn't have the expected length: " + length);
+        }
+        // Stages 2 and 3 - Split into the sections and build them
+        return build(context, sequence, message.getColumnX(), message.getColumnZ(), groundUpContinuous, primaryBitMap, additionalDataBitMap, hasSkyLight);
+    }
+
+    /**
+     * Decodes all the columns from a {@link org.spoutcraft.client.network.message.play.ChunkDataBulkMessage}. The data for all columns is a single compressed stream, which is inflated one column at
+     * a time.
+     *
+     * @param message The message to decode
+     * @param sequence The sequence number of the decode request
+     * @return The decoded columns, in the message order
+     * @throws IOException If the data is corrupted or doesn't have the expected length
+     */
+    public List<DecodedChunkColumn> decode(ChunkDataBulkMessage message, long sequence) throws IOException {
+        final int columnCount = message.getColumnCount();
+        final List<DecodedChunkColumn> columns = new ArrayList<>(columnCount);
+        final ChunkDecodeContext context = ChunkDecodeContext.get();
+        final byte[] data = context.getData();
+        final Inflater inflater = context.resetInflater();
+        final ByteBuf input = message.getCompressedData().duplicate();
+        for (int i = 0; i < columnCount; i++) {
+            final short primaryBitMap = message.getPrimaryBitMaps()[i];
+            final short additionalDataBitMap = message.getAdditionalDataBitMaps()[i];
+            // Bulk columns are always ground up continuous
+            final int length = getColumnLength(primaryBitMap, additionalDataBitMap, true, message.hasSkyLight());
+            // Stage 1 - Inflate the data for this column only, reusing the data array of the previous one
+            if (inflate(inflater, input, context.getInput(), data, length) != length) {
+                throw new IOException("Chunk data bulk is truncated at column " + i);
+            }
+            // Stages 2 and 3 - Split into the sections and build them
+            columns.add(build(context, sequence, message.getColumnXs()[i], message.getColumnZs()[i], true, primaryBitMap, additionalDataBitMap, message.hasSkyLight()));
+        }
+        return columns;
+    }
+
+    private DecodedChunkColumn build(ChunkDecodeContext context, long sequence, int x, int z, boolean groundUpContinuous, short primaryBitMap, short additionalDataBitMap, boolean hasSkyLight) {
+        final byte[] data = context.getData();
+        // Stage 2 - Find where each array starts
+        final int sectionCount = Integer.bitCount(primaryBitMap & 0xffff);
+        final int metadataStart = sectionCount * Chunk.BLOCKS.VOLUME;
+        final int blockLightStart = metadataStart + sectionCount * Chunk.BLOCKS.HALF_VOLUME;
+        final int skyLightStart = blockLightStart + sectionCount * Chunk.BLOCKS.HALF_VOLUME;
+        final int additionalDataStart = skyLightStart + (hasSkyLight ? sectionCount * Chunk.BLOCKS.HALF_VOLUME : 0);
+        final int biomesStart = additionalDataStart + Integer.bitCount(additionalDataBitMap & 0xffff) * Chunk.BLOCKS.HALF_VOLUME;
+        // Stage 3 - Build the block store of each section
+        final AtomicBlockStore[] sections = new AtomicBlockStore[ChunkColumn.HEIGHT];
+        int section = 0;
+        int additionalDataSection = 0;
+        for (int y = 0; y < ChunkColumn.HEIGHT; y++) {
+            if ((primaryBitMap >> y & 1) == 0) {
+                continue;
+            }
+            final int halfOffset = section * Chunk.BLOCKS.HALF_VOLUME;
+            final int additionalDataOffset = (additionalDataBitMap >> y & 1) != 0 ? additionalDataStart + additionalDataSection++ * Chunk.BLOCKS.HALF_VOLUME : -1;
+            sections[y] = buildSection(context, section * Chunk.BLOCKS.VOLUME, metadataStart + halfOffset, blockLightStart + halfOffset,
+                    hasSkyLight ? skyLightStart + halfOffset : -1, additionalDataOffset);
+            section++;
+        }
+        final byte[] biomes = groundUpContinuous ? Arrays.copyOfRange(data, biomesStart, biomesStart + Chunk.BLOCKS.AREA) : null;
+        return new DecodedChunkColumn(sequence, x, z, groundUpContinuous, sections, biomes);
+    }
+
+    private AtomicBlockStore buildSection(ChunkDecodeContext context, int idOffset, int metadataOffset, int blockLightOffset, int skyLightOffset, int additionalDataOffset) {
+        final byte[] data = context.getData();
+        final int[] blocks = context.getBlocks();
+        // Build the packed block states in a single pass, two blocks at a time since they share the bytes of the half byte arrays
+        boolean uniform = true;
+        for (int i = 0; i < Chunk.BLOCKS.VOLUME; i += 2) {
+            final int halfIndex = i >> 1;
+            final int metadata = data[metadataOffset + halfIndex];
+            final int blockLight = data[blockLightOffset + halfIndex];
+            final int skyLight = skyLightOffset >= 0 ? data[skyLightOffset + halfIndex] : 0;
+            final int additionalData = additionalDataOffset >= 0 ? data[additionalDataOffset + halfIndex] : 0;
+            // Even indices are in the lower half of the bytes, odd ones in the upper half
+            blocks[i] = pack(data[idOffset + i] & 0xff | (additionalData & 0xf) << 8, metadata & 0xf, blockLight & 0xf, skyLight & 0xf);
+            blocks[i + 1] = pack(data[idOffset + i + 1] & 0xff | (additionalData & 0xf0) << 4, metadata >> 4 & 0xf, blockLight >> 4 & 0xf, skyLight >> 4 & 0xf);
+            uniform &= blocks[i] == blocks[0] && blocks[i + 1] == blocks[0];
+        }
+        // Fast path for sections of air without any light, which don't need any storage
+        if (uniform && blocks[0] == 0) {
+            return Chunk.createEmptyBlockStore();
+        }
+        // The block store copies the array, so it can be reused for the next section. Other uniform sections, such as air with sky light or solid stone, are compressed to a single entry palette
+        return Chunk.createBlockStore(blocks, uniform);
+    }
+
+    private static int pack(int id, int metadata, int blockLight, int skyLight) {
+        //TODO Test Code, use the actual IDs once we have all materials in place!
+        final int material = id != 0 ? SOLID_ID : AIR_ID;
+        // Block data order: MMMM-MMMM-BBBB-SSSS (M = metadata, B = block light, S = sky light)
+        return material << 16 | metadata << 8 | blockLight << 4 | skyLight;
+    }
+
+    /**
+     * Returns true if the message is sent by the server to unload the column rather than to load it. It shouldn't be decoded.
+     *
+     * @param message The message to check
+     * @return Whether or not the message unloads the column
+     */
+    public static boolean isUnloadColumn(ChunkDataMessage message) {
+        return ByteBufUtil.equals(UNLOAD_COLUMN_DATA, message.getCompressedData());
+    }
+
+    /**
+     * Returns the number of bytes of inflated data for a column.
+     *
+     * @param primaryBitMap The sections that are sent
+     * @param additionalDataBitMap The sections that have additional data
+     * @param groundUpContinuous Whether or not the biomes are sent
+     * @param hasSkyLight Whether or not the sky light is sent
+     * @return The length of the column data
+     */
+    public static int getColumnLength(short primaryBitMap, short additionalDataBitMap, boolean groundUpContinuous, boolean hasSkyLight) {
+        final int sectionLength = Chunk.BLOCKS.VOLUME + Chunk.BLOCKS.HALF_VOLUME * (hasSkyLight ? 3 : 2);
+        return Integer.bitCount(primaryBitMap & 0xffff) * sectionLength + Integer.bitCount(additionalDataBitMap & 0xffff) * Chunk.BLOCKS.HALF_VOLUME
+                + (groundUpContinuous ? Chunk.BLOCKS.AREA : 0);
+    }
+
+    /**
+     * Inflates up to the length of bytes at the start of the output array, stopping early if the stream is finished or the input is exhausted. The inflater can't read from a {@link
+     * io.netty.buffer.ByteBuf} (which is usually direct) in Java 7, so the input is copied to it a few kilobytes at a time through a scratch array. The reader index of the input is advanced by the
+     * number of bytes given to the inflater.
+     *
+     * @param inflater The inflater to use
+     * @param input The compressed input
+     * @param scratch The array used to pass the input to the inflater
+     * @param output The output array
+     * @param length The maximum number of bytes to inflate
+     * @return The number of bytes actually inflated
+     * @throws IOException If the data is corrupted
+     */
+    private static int inflate(Inflater inflater, ByteBuf input, byte[] scratch, byte[] output, int length) throws IOException {
+        int inflated = 0;
+        try {
+            while (inflated < length && !inflater.finished()) {
+                if (inflater.needsInput()) {
+                    if (!input.isReadable()) {
+                        break;
+                    }
+                    final int count = Math.min(scratch.length, input.readableBytes());
+                    input.readBytes(scratch, 0, count);
+                    inflater.setInput(scratch, 0, count);
+                }
+                final int count = inflater.inflate(output, inflated, length - inflated);
+                if (count == 0 && inflater.needsDictionary()) {
+                    break;
+                }
+                inflated += count;
+            }
+        } catch (DataFormatException ex) {
+            throw new IOException("Chunk data is corrupted!", ex);
+        }
+        return inflated;
+    }
+}
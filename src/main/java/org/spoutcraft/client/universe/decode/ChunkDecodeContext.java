@@ -0,0 +1,95 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.universe.decode;
+
+import java.util.zip.Inflater;
+
+import org.spoutcraft.client.universe.world.Chunk;
+
+/**
+ * The reusable state needed to decode chunk columns: an inflater and scratch arrays large enough for a full column. Contexts aren't thread safe, use {@link #get()} to obtain the one confined to
+ * the current thread. The inflater is reset before each use and never ended, so it stays valid for the lifetime of the thread.
+ */
+class ChunkDecodeContext {
+    private static final int INPUT_LENGTH = 8192;
+    private static final ThreadLocal<ChunkDecodeContext> CONTEXTS = new ThreadLocal<ChunkDecodeContext>() {
+        @Override
+        protected ChunkDecodeContext initialValue() {
+            return new ChunkDecodeContext();
+        }
+    };
+    private final Inflater inflater = new Inflater();
+    private final byte[] input = new byte[INPUT_LENGTH];
+    private final byte[] data = new byte[ChunkColumnDecoder.MAX_COLUMN_LENGTH];
+    private final int[] blocks = new int[Chunk.BLOCKS.VOLUME];
+
+    private ChunkDecodeContext() {
+    }
+
+    /**
+     * Returns the inflater, after resetting it so it's ready for a new stream.
+     *
+     * @return The reset inflater
+     */
+    Inflater resetInflater() {
+        inflater.reset();
+        return inflater;
+    }
+
+    /**
+     * Returns the scratch array through which the compressed data is fed to the inflater, a few kilobytes at a time.
+     *
+     * @return The compressed input array
+     */
+    byte[] getInput() {
+        return input;
+    }
+
+    /**
+     * Returns the scratch array for the inflated data of a column, large enough for {@link org.spoutcraft.client.universe.decode.ChunkColumnDecoder#MAX_COLUMN_LENGTH} bytes.
+     *
+     * @return The inflated data array
+     */
+    byte[] getData() {
+        return data;
+    }
+
+    /**
+     * Returns the scratch array for the packed block states of a section.
+     *
+     * @return The packed block state array
+     */
+    int[] getBlocks() {
+        return blocks;
+    }
+
+    /**
+     * Returns the decode context confined to the current thread, creating it on first use.
+     *
+     * @return The context for the current thread
+     */
+    static ChunkDecodeContext get() {
+        return CONTEXTS.get();
+    }
+}
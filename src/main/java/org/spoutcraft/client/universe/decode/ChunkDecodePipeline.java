@@ -0,0 +1,187 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.universe.decode;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.Logger;
+
+import org.spoutcraft.client.network.message.play.ChunkDataBulkMessage;
+import org.spoutcraft.client.network.message.play.ChunkDataMessage;
+
+/**
+ * Decodes chunk data messages in parallel, off the universe thread. Messages are queued from the universe thread, decoded on a bounded pool of worker threads by a {@link
+ * org.spoutcraft.client.universe.decode.ChunkColumnDecoder} and the decoded columns are made available to be polled back by the universe thread, which should install them all at once every tick.
+ * <p/>
+ * Each message is offered with a sequence number from {@link #nextSequence()}, also stored in the resulting columns. Since columns can be completed in any order, these can be used to discard the
+ * ones that became obsolete in the meantime.
+ * <p/>
+ * The number of messages waiting to be decoded is bounded. When the queue is full, the offer is refused and the message stays with the caller, who should offer it again later, such as on the next
+ * tick, and stop taking in new messages until then. Messages are never decoded on the caller's thread.
+ */
+public class ChunkDecodePipeline {
+    // The number of messages that can be waiting to be decoded, per worker thread
+    private static final int QUEUED_MESSAGES_PER_THREAD = 16;
+    private final Logger logger;
+    private final ChunkColumnDecoder decoder = new ChunkColumnDecoder();
+    private final ThreadPoolExecutor executor;
+    private final Queue<DecodedChunkColumn> decoded = new ConcurrentLinkedQueue<>();
+    private long sequence = 0;
+
+    /**
+     * Constructs a new decode pipeline, using one less worker thread than there are available processors (but at least one).
+     *
+     * @param logger The logger for decoding errors
+     */
+    public ChunkDecodePipeline(Logger logger) {
+        this(logger, Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+    }
+
+    /**
+     * Constructs a new decode pipeline.
+     *
+     * @param logger The logger for decoding errors
+     * @param threads The number of worker threads
+     */
+    public ChunkDecodePipeline(Logger logger, int threads) {
+        this.logger = logger;
+        executor = new ThreadPoolExecutor(threads, threads,
+                60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(threads * QUEUED_MESSAGES_PER_THREAD));
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Returns the next sequence number. Sequence numbers start at one and are strictly increasing. Not thread safe, this must only be used by the thread that queues the messages.
+     *
+     * @return The next sequence number
+     */
+    public long nextSequence() {
+        return ++sequence;
+    }
+
+    /**
+     * Queues the column in the chunk data message to be decoded, unless the queue is full or the pipeline was shut down. If queued, the message will be released once decoded, else it's left
+     * untouched.
+     *
+     * @param message The message to decode
+     * @param sequence The sequence number for the column
+     * @return Whether or not the message was queued
+     */
+    public boolean offer(ChunkDataMessage message, long sequence) {
+        return offer(new ChunkDataTask(message, sequence));
+    }
+
+    /**
+     * Queues the columns in the chunk data bulk message to be decoded, unless the queue is full or the pipeline was shut down. If queued, the message will be released once decoded, else it's left
+     * untouched.
+     *
+     * @param message The message to decode
+     * @param sequence The sequence number for the columns
+     * @return Whether or not the message was queued
+     */
+    public boolean offer(ChunkDataBulkMessage message, long sequence) {
+        return offer(new ChunkDataBulkTask(message, sequence));
+    }
+
+    private boolean offer(Runnable task) {
+        try {
+            executor.execute(task);
+            return true;
+        } catch (RejectedExecutionException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the next decoded column, or null if there are none available at the moment.
+     *
+     * @return The next decoded column, or null
+     */
+    public DecodedChunkColumn poll() {
+        return decoded.poll();
+    }
+
+    /**
+     * Shuts down the executor used for decoding, cancelling any decoding pending or active, and discards the decoded columns. The messages that were never decoded are released.
+     */
+    public void shutdown() {
+        for (Runnable task : executor.shutdownNow()) {
+            if (task instanceof ChunkDataTask) {
+                ((ChunkDataTask) task).message.release();
+            } else if (task instanceof ChunkDataBulkTask) {
+                ((ChunkDataBulkTask) task).message.release();
+            }
+        }
+        decoded.clear();
+    }
+
+    private class ChunkDataTask implements Runnable {
+        private final ChunkDataMessage message;
+        private final long sequence;
+
+        private ChunkDataTask(ChunkDataMessage message, long sequence) {
+            this.message = message;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            try {
+                decoded.add(decoder.decode(message, sequence));
+            } catch (IOException ex) {
+                logger.error("Failed to decode chunk column (" + message.getColumnX() + ", " + message.getColumnZ() + ")", ex);
+            } finally {
+                message.release();
+            }
+        }
+    }
+
+    private class ChunkDataBulkTask implements Runnable {
+        private final ChunkDataBulkMessage message;
+        private final long sequence;
+
+        private ChunkDataBulkTask(ChunkDataBulkMessage message, long sequence) {
+            this.message = message;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            try {
+                decoded.addAll(decoder.decode(message, sequence));
+            } catch (IOException ex) {
+                logger.error("Failed to decode chunk column bulk of " + message.getColumnCount() + " columns", ex);
+            } finally {
+                message.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.universe.decode;
+
+import com.flowpowered.commons.store.block.AtomicBlockStore;
+
+/**
+ * A chunk column that has been decoded from the server data and is ready to be installed in a world. Contains one block store per non-empty section and the biome data, if sent.
+ */
+public class DecodedChunkColumn {
+    private final long sequence;
+    private final int x;
+    private final int z;
+    private final boolean groundUpContinuous;
+    private final AtomicBlockStore[] sections;
+    private final byte[] biomes;
+
+    public DecodedChunkColumn(long sequence, int x, int z, boolean groundUpContinuous, AtomicBlockStore[] sections, byte[] biomes) {
+        this.sequence = sequence;
+        this.x = x;
+        this.z = z;
+        this.groundUpContinuous = groundUpContinuous;
+        this.sections = sections;
+        this.biomes = biomes;
+    }
+
+    /**
+     * Returns the sequence number of the decode request that produced this column. Used to discard columns that were superseded or unloaded while being decoded.
+     *
+     * @return The sequence number
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getZ() {
+        return z;
+    }
+
+    /**
+     * Returns true if the column was sent in its entirety, in which case the missing sections are empty (air) and the biomes are present.
+     *
+     * @return Whether or not the column is complete
+     */
+    public boolean isGroundUpContinuous() {
+        return groundUpContinuous;
+    }
+
+    /**
+     * Returns the block store for the section at the y chunk coordinate, or null if the section wasn't sent.
+     *
+     * @param y The y chunk coordinate of the section
+     * @return The section's block store, or null
+     */
+    public AtomicBlockStore getSection(int y) {
+        return sections[y];
+    }
+
+    /**
+     * Returns the biome data, one byte per column of blocks, or null if it wasn't sent.
+     *
+     * @return The biome data, or null
+     */
+    public byte[] getBiomes() {
+        return biomes;
+    }
+}
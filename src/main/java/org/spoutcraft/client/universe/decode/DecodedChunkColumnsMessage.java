@@ -0,0 +1,63 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.universe.decode;
+
+import java.util.List;
+
+import org.spoutcraft.client.network.message.ChannelMessage;
+
+/**
+ * A message carrying chunk columns that were already decoded in the network pipeline by the {@link org.spoutcraft.client.network.ChunkInflateHandler}. It replaces the chunk data message or chunk
+ * data bulk message the columns were decoded from, so the universe only has to install them.
+ */
+public class DecodedChunkColumnsMessage extends ChannelMessage {
+    private static final Channel[] CHANNELS = new Channel[] {Channel.UNIVERSE};
+    private final List<DecodedChunkColumn> columns;
+
+    /**
+     * Constructs a new decoded chunk columns message.
+     *
+     * @param columns The decoded columns, in the order they were sent
+     */
+    public DecodedChunkColumnsMessage(List<DecodedChunkColumn> columns) {
+        super(CHANNELS);
+        this.columns = columns;
+    }
+
+    /**
+     * Returns the decoded columns, in the order they were sent.
+     *
+     * @return The decoded columns
+     */
+    public List<DecodedChunkColumn> getColumns() {
+        return columns;
+    }
+
+    @Override
+    public String toString() {
+        return "DecodedChunkColumnsMessage{" +
+                "columns=" + columns.size() +
+                '}';
+    }
+}
@@ -23,26 +23,36 @@
  */
 package org.spoutcraft.client.universe.snapshot;
 
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
-
 import com.flowpowered.commons.store.block.AtomicBlockStore;
 import com.flowpowered.math.vector.Vector3i;
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TIntArrayList;
 import org.spoutcraft.client.universe.block.Block;
 import org.spoutcraft.client.universe.block.material.Material;
 import org.spoutcraft.client.universe.world.Chunk;
 
 /**
- *
+ * A snapshot of a chunk's blocks. The snapshot data is held in immutable {@link org.spoutcraft.client.universe.snapshot.ChunkSnapshot.Version}s. Each update builds a new version (copy on write) and
+ * publishes it atomically, so reading requires no locking. Readers that need a consistent view across many reads, such as the mesher, should get the current version once and use it directly. Old
+ * versions are garbage collected once no reader holds them anymore.
+ * <p/>
+ * The block data is split in horizontal layers, one per y coordinate, which the versions share. An update that changes only a few blocks copies the layers they're in, instead of the whole chunk.
  */
 public class ChunkSnapshot {
-    private final short[] blockIDs = new short[Chunk.BLOCKS.VOLUME];
-    private final short[] blockData = new short[Chunk.BLOCKS.VOLUME];
     private final WorldSnapshot world;
     private final Vector3i position;
-    private long updateNumber = 0;
-    private final ReadWriteLock lock = new ReentrantReadWriteLock(true);
+    // Full updates are read into these before being split into layers, only used by the updating thread
+    private static final ThreadLocal<short[][]> FULL_UPDATE_ARRAYS = new ThreadLocal<short[][]>() {
+        @Override
+        protected short[][] initialValue() {
+            return new short[][]{new short[Chunk.BLOCKS.VOLUME], new short[Chunk.BLOCKS.VOLUME]};
+        }
+    };
+    private volatile Version version = new Version(createLayers(null), createLayers(null), 0, true, new int[0]);
+    // The block store of the last update, if it changes the whole snapshot needs to be updated. Only used by the updating thread
+    private AtomicBlockStore lastBlocks = null;
+    // Only used by the updating thread, reused between updates
+    private final TIntList changedBlocks = new TIntArrayList();
 
     public ChunkSnapshot(WorldSnapshot world, Vector3i position) {
         this.world = world;
@@ -69,15 +79,17 @@ public class ChunkSnapshot {
         return position.getZ();
     }
 
+    /**
+     * Returns the current version of the snapshot data. It will never change, even if the snapshot is updated.
+     *
+     * @return The current version
+     */
+    public Version getVersion() {
+        return version;
+    }
+
     public Block getBlock(Vector3i position) {
-        final Lock lock = this.lock.readLock();
-        lock.lock();
-        try {
-            final int index = getBlockIndex(position);
-            return new Block(position, blockIDs[index], blockData[index]);
-        } finally {
-            lock.unlock();
-        }
+        return version.getBlock(position);
     }
 
     public Block getBlock(int x, int y, int z) {
@@ -89,49 +101,44 @@ public class ChunkSnapshot {
     }
 
     public Material getMaterial(int x, int y, int z) {
-        final Lock lock = this.lock.readLock();
-        lock.lock();
-        try {
-            final int index = getBlockIndex(x, y, z);
-            return Material.get(blockIDs[index], Chunk.SUB_ID_MASK.extract(blockData[index]));
-        } finally {
-            lock.unlock();
-        }
+        return version.getMaterial(x, y, z);
     }
 
     public short getBlockLight(int x, int y, int z) {
-        final Lock lock = this.lock.readLock();
-        lock.lock();
-        try {
-            return Chunk.BLOCK_LIGHT_MASK.extract(blockData[getBlockIndex(x, y, z)]);
-        } finally {
-            lock.unlock();
-        }
+        return version.getBlockLight(x, y, z);
     }
 
     public short getBlockSkyLight(int x, int y, int z) {
-        final Lock lock = this.lock.readLock();
-        lock.lock();
-        try {
-            return Chunk.BLOCK_SKY_LIGHT_MASK.extract(blockData[getBlockIndex(x, y, z)]);
-        } finally {
-            lock.unlock();
-        }
+        return version.getBlockSkyLight(x, y, z);
     }
 
     public long getUpdateNumber() {
-        final Lock lock = this.lock.readLock();
-        lock.lock();
-        try {
-            return updateNumber;
-        } finally {
-            lock.unlock();
-        }
+        return version.getUpdateNumber();
+    }
+
+    /**
+     * Returns true if the last update changed the entire snapshot, instead of just a few blocks. In this case there are no changed blocks. The first update is always a full one.
+     *
+     * @return Whether or not the last update was a full one
+     * @see org.spoutcraft.client.universe.snapshot.ChunkSnapshot.Version#isFullUpdate()
+     */
+    public boolean isFullUpdate() {
+        return version.isFullUpdate();
+    }
+
+    /**
+     * Returns the indices of the blocks changed by the last update, if it wasn't a full one.
+     *
+     * @return The indices of the changed blocks
+     * @see org.spoutcraft.client.universe.snapshot.ChunkSnapshot.Version#getChangedBlocks()
+     */
+    public int[] getChangedBlocks() {
+        return version.getChangedBlocks();
     }
 
     /**
      * Updates the snapshot to the current chunk passed to the constructor. The chunk passed must be a the same location and world than the snapshot. Returns whether or not the snapshot state has
-     * changed. Clears the chunk block store dirty arrays.
+     * changed. Clears the chunk block store dirty arrays. Only one thread at a time may update the snapshot.
      *
      * @param current The current chunk to update from
      * @return Whether or not the snapshot state has changed
@@ -140,22 +147,46 @@ public class ChunkSnapshot {
         if (!current.getPosition().equals(position) || !current.getWorld().getID().equals(world.getID())) {
             throw new IllegalArgumentException("Cannot accept a chunk from another position or world");
         }
-        final Lock lock = this.lock.writeLock();
-        lock.lock();
-        try {
-            // TODO: update only the dirty blocks, unless the dirty arrays are overflown
-            final AtomicBlockStore blocks = current.getBlocks();
-            if (blocks.isDirty()) {
-                blocks.getBlockIdArray(blockIDs);
-                blocks.getDataArray(blockData);
-                blocks.resetDirtyArrays();
-                updateNumber++;
-                return true;
-            }
+        final AtomicBlockStore blocks = current.getBlocks();
+        if (!blocks.isDirty()) {
             return false;
-        } finally {
-            lock.unlock();
         }
+        final Version last = version;
+        final short[][] blockIDs;
+        final short[][] blockData;
+        changedBlocks.clear();
+        // Copy everything if the chunk was replaced or if too many blocks changed for them to be tracked
+        final boolean fullUpdate = blocks != lastBlocks || blocks.isDirtyOverflow();
+        if (fullUpdate) {
+            final short[][] arrays = FULL_UPDATE_ARRAYS.get();
+            blockIDs = createLayers(blocks.getBlockIdArray(arrays[0]));
+            blockData = createLayers(blocks.getDataArray(arrays[1]));
+            lastBlocks = blocks;
+        } else {
+            // The last version can't be modified, share its layers and only copy the ones with changes
+            blockIDs = last.blockIDs.clone();
+            blockData = last.blockData.clone();
+            final int dirtyCount = blocks.getDirtyBlocks();
+            for (int i = 0; i < dirtyCount; i++) {
+                final Vector3i dirty = blocks.getDirtyBlock(i);
+                final int y = dirty.getY() & Chunk.BLOCKS.MASK;
+                if (blockIDs[y] == last.blockIDs[y]) {
+                    blockIDs[y] = last.blockIDs[y].clone();
+                    blockData[y] = last.blockData[y].clone();
+                }
+                final int index = getBlockIndex(dirty);
+                final int layerIndex = index & Chunk.BLOCKS.AREA - 1;
+                // Use the current state, the block might have changed more than once
+                final int state = blocks.getFullData(dirty.getX(), dirty.getY(), dirty.getZ());
+                blockIDs[y][layerIndex] = (short) (state >> 16);
+                blockData[y][layerIndex] = (short) state;
+                changedBlocks.add(index);
+            }
+        }
+        blocks.resetDirtyArrays();
+        // Publish the new version
+        version = new Version(blockIDs, blockData, last.updateNumber + 1, fullUpdate, changedBlocks.toArray());
+        return true;
     }
 
     @Override
@@ -180,11 +211,138 @@ public class ChunkSnapshot {
         return result;
     }
 
+    /**
+     * Returns the x coordinate of the block at the index.
+     *
+     * @param index The block index
+     * @return The x coordinate
+     */
+    public static int getBlockX(int index) {
+        return index & Chunk.BLOCKS.MASK;
+    }
+
+    /**
+     * Returns the y coordinate of the block at the index.
+     *
+     * @param index The block index
+     * @return The y coordinate
+     */
+    public static int getBlockY(int index) {
+        return index >> Chunk.BLOCKS.DOUBLE_BITS & Chunk.BLOCKS.MASK;
+    }
+
+    /**
+     * Returns the z coordinate of the block at the index.
+     *
+     * @param index The block index
+     * @return The z coordinate
+     */
+    public static int getBlockZ(int index) {
+        return index >> Chunk.BLOCKS.BITS & Chunk.BLOCKS.MASK;
+    }
+
+    // Splits the data in layers of constant y, or creates empty layers if the data is null
+    private static short[][] createLayers(short[] data) {
+        final short[][] layers = new short[Chunk.BLOCKS.SIZE][Chunk.BLOCKS.AREA];
+        if (data != null) {
+            for (int y = 0; y < Chunk.BLOCKS.SIZE; y++) {
+                System.arraycopy(data, y << Chunk.BLOCKS.DOUBLE_BITS, layers[y], 0, Chunk.BLOCKS.AREA);
+            }
+        }
+        return layers;
+    }
+
     private static int getBlockIndex(Vector3i position) {
         return getBlockIndex(position.getX(), position.getY(), position.getZ());
     }
 
     private static int getBlockIndex(int x, int y, int z) {
-        return (y & Chunk.BLOCKS.MASK) << Chunk.BLOCKS.DOUBLE_BITS | (z & Chunk.BLOCKS.MASK) << Chunk.BLOCKS.BITS | x & Chunk.BLOCKS.MASK;
+        return (y & Chunk.BLOCKS.MASK) << Chunk.BLOCKS.DOUBLE_BITS | getLayerIndex(x, z);
+    }
+
+    private static int getLayerIndex(int x, int z) {
+        return (z & Chunk.BLOCKS.MASK) << Chunk.BLOCKS.BITS | x & Chunk.BLOCKS.MASK;
+    }
+
+    /**
+     * An immutable version of the snapshot data, produced by an update. It can be read from any thread without locking. The layers of unchanged blocks are shared with the previous version.
+     */
+    public static class Version {
+        // Indexed by y, then by the z and x coordinates in the layer
+        private final short[][] blockIDs;
+        private final short[][] blockData;
+        private final long updateNumber;
+        private final boolean fullUpdate;
+        private final int[] changedBlocks;
+
+        private Version(short[][] blockIDs, short[][] blockData, long updateNumber, boolean fullUpdate, int[] changedBlocks) {
+            this.blockIDs = blockIDs;
+            this.blockData = blockData;
+            this.updateNumber = updateNumber;
+            this.fullUpdate = fullUpdate;
+            this.changedBlocks = changedBlocks;
+        }
+
+        public Block getBlock(Vector3i position) {
+            final int y = position.getY() & Chunk.BLOCKS.MASK;
+            final int index = getLayerIndex(position.getX(), position.getZ());
+            return new Block(position, blockIDs[y][index], blockData[y][index]);
+        }
+
+        public Material getMaterial(int x, int y, int z) {
+            final int index = getLayerIndex(x, z);
+            y &= Chunk.BLOCKS.MASK;
+            return Material.get(blockIDs[y][index], Chunk.SUB_ID_MASK.extract(blockData[y][index]));
+        }
+
+        public short getBlockID(int x, int y, int z) {
+            return blockIDs[y & Chunk.BLOCKS.MASK][getLayerIndex(x, z)];
+        }
+
+        public short getBlockSubID(int x, int y, int z) {
+            return Chunk.SUB_ID_MASK.extract(getData(x, y, z));
+        }
+
+        public short getBlockLight(int x, int y, int z) {
+            return Chunk.BLOCK_LIGHT_MASK.extract(getData(x, y, z));
+        }
+
+        public short getBlockSkyLight(int x, int y, int z) {
+            return Chunk.BLOCK_SKY_LIGHT_MASK.extract(getData(x, y, z));
+        }
+
+        private short getData(int x, int y, int z) {
+            return blockData[y & Chunk.BLOCKS.MASK][getLayerIndex(x, z)];
+        }
+
+        /**
+         * Returns the update number of the version, incremented by one for each update of the snapshot.
+         *
+         * @return The update number
+         */
+        public long getUpdateNumber() {
+            return updateNumber;
+        }
+
+        /**
+         * Returns true if the update that produced this version changed the entire snapshot, instead of just a few blocks. In this case there are no changed blocks. The first update is always a
+         * full one.
+         *
+         * @return Whether or not the update was a full one
+         */
+        public boolean isFullUpdate() {
+            return fullUpdate;
+        }
+
+        /**
+         * Returns the indices of the blocks changed by the update that produced this version, if it wasn't a full one. Use {@link ChunkSnapshot#getBlockX(int)}, {@link
+         * ChunkSnapshot#getBlockY(int)} and {@link ChunkSnapshot#getBlockZ(int)} to convert them to coordinates. The changes of the previous updates aren't included, so consumers should check that
+         * the update number only increased by one since they last read the snapshot. The returned array must not be modified.
+         *
+         * @return The indices of the changed blocks
+         */
+        public int[] getChangedBlocks() {
+            return changedBlocks;
+        }
     }
 }
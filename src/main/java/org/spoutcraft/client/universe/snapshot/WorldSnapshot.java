@@ -24,10 +24,7 @@
 package org.spoutcraft.client.universe.snapshot;
 
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
 import java.util.Map;
-import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
@@ -37,6 +34,7 @@ import com.flowpowered.commons.map.TripleIntObjectMap;
 import com.flowpowered.commons.map.impl.TTripleInt21ObjectHashMap;
 import com.flowpowered.math.vector.Vector3i;
 import org.spoutcraft.client.universe.world.Chunk;
+import org.spoutcraft.client.universe.world.ChunkMap;
 import org.spoutcraft.client.universe.world.World;
 
 /**
@@ -130,29 +128,29 @@ public class WorldSnapshot {
         if (!current.getID().equals(id)) {
             throw new IllegalArgumentException("Cannot update from a world with another ID");
         }
+        // Only look at the chunks that changed since the last update
+        final long[] changedChunks = current.pollChunkJournal();
         final Lock lock = this.lock.writeLock();
         lock.lock();
         try {
-            final Set<Vector3i> validChunks = new HashSet<>();
             boolean changed = false;
-            for (Chunk chunk : current.getChunks().values()) {
-                final Vector3i position = chunk.getPosition();
-                ChunkSnapshot chunkSnapshot = chunks.get(position.getX(), position.getY(), position.getZ());
+            for (long key : changedChunks) {
+                final int x = ChunkMap.keyX(key), y = ChunkMap.keyY(key), z = ChunkMap.keyZ(key);
+                final Chunk chunk = current.getChunk(x, y, z);
+                if (chunk == null) {
+                    if (chunks.remove(x, y, z) != null) {
+                        changed = true;
+                    }
+                    continue;
+                }
+                ChunkSnapshot chunkSnapshot = chunks.get(x, y, z);
                 if (chunkSnapshot == null) {
-                    chunkSnapshot = new ChunkSnapshot(this, position);
-                    chunks.put(position.getX(), position.getY(), position.getZ(), chunkSnapshot);
+                    chunkSnapshot = new ChunkSnapshot(this, chunk.getPosition());
+                    chunks.put(x, y, z, chunkSnapshot);
                 }
                 if (chunkSnapshot.update(chunk)) {
                     changed = true;
                 }
-                validChunks.add(position);
-            }
-            for (Iterator<ChunkSnapshot> iterator = chunks.valueCollection().iterator(); iterator.hasNext(); ) {
-                final Vector3i position = iterator.next().getPosition();
-                if (!validChunks.contains(position)) {
-                    iterator.remove();
-                    changed = true;
-                }
             }
             time = current.getTime();
             if (changed) {
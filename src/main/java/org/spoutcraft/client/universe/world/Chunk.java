@@ -53,15 +53,28 @@ public class Chunk {
     public Chunk(World world, Vector3i position) {
         this.world = world;
         this.position = position;
-        blocks = new AtomicPaletteBlockStore(BLOCKS.BITS, true, DIRTY_ARRAY_SIZE);
+        blocks = createEmptyBlockStore();
         // Set the chunk as dirty for the first snapshot
         blocks.touchBlock(0, 0, 0);
     }
 
     public Chunk(World world, Vector3i position, short[] blocks, short[] data) {
+        this(world, position, createBlockStore(blocks, data));
+    }
+
+    /**
+     * Constructs a new chunk from an already built block store, such as one created by {@link #createBlockStore(short[], short[])}. The store is touched so that the first snapshot picks it up.
+     *
+     * @param world The chunk's world
+     * @param position The chunk's position
+     * @param blocks The block store
+     */
+    public Chunk(World world, Vector3i position, AtomicBlockStore blocks) {
         this.world = world;
         this.position = position;
-        this.blocks = new AtomicPaletteBlockStore(BLOCKS.BITS, true, false, DIRTY_ARRAY_SIZE, blocks, data);
+        this.blocks = blocks;
+        // Set the chunk as dirty for the first snapshot
+        blocks.touchBlock(0, 0, 0);
     }
 
     public World getWorld() {
@@ -106,6 +119,11 @@ public class Chunk {
 
     public void setMaterial(int x, int y, int z, Material material) {
         blocks.setBlock(x & BLOCKS.MASK, y & BLOCKS.MASK, z & BLOCKS.MASK, material.getID(), material.getSubID(), SUB_ID_MASK);
+        final ChunkColumn column = world.getChunkColumn(getX(), getZ());
+        if (column != null) {
+            column.invalidateHeightMap();
+        }
+        world.journalChunk(getX(), getY(), getZ());
     }
 
     public short getBlockLight(Vector3i position) {
@@ -122,6 +140,7 @@ public class Chunk {
 
     public void setBlockLight(int x, int y, int z, short light) {
         blocks.setData(x, y, z, light, BLOCK_LIGHT_MASK);
+        world.journalChunk(getX(), getY(), getZ());
     }
 
     public short getBlockSkyLight(Vector3i position) {
@@ -138,6 +157,7 @@ public class Chunk {
 
     public void setBlockSkyLight(int x, int y, int z, short light) {
         blocks.setData(x, y, z, light, BLOCK_SKY_LIGHT_MASK);
+        world.journalChunk(getX(), getY(), getZ());
     }
 
     public AtomicBlockStore getBlocks() {
@@ -166,6 +186,49 @@ public class Chunk {
         return result;
     }
 
+    /**
+     * Creates a block store of the chunk size from the block ID and data arrays. This doesn't require a chunk or a world, so it can be done from any thread.
+     *
+     * @param blocks The block IDs
+     * @param data The block data
+     * @return The block store
+     */
+    public static AtomicBlockStore createBlockStore(short[] blocks, short[] data) {
+        return new AtomicPaletteBlockStore(BLOCKS.BITS, true, false, DIRTY_ARRAY_SIZE, blocks, data);
+    }
+
+    /**
+     * Creates a block store of the chunk size from the packed block states, each being the block ID in the upper half and the block data in the lower one. This is faster than {@link
+     * #createBlockStore(short[], short[])} as the store can use the states as they are. This doesn't require a chunk or a world, so it can be done from any thread.
+     *
+     * @param packed The packed block states, which are copied
+     * @return The block store
+     */
+    public static AtomicBlockStore createBlockStore(int[] packed) {
+        return createBlockStore(packed, false);
+    }
+
+    /**
+     * Creates a block store of the chunk size from the packed block states, like {@link #createBlockStore(int[])}, optionally compressing the palette to the states actually used. Compressing takes
+     * an extra pass over the blocks, but a store with few distinct states, such as a uniform one which only needs a single entry palette, then takes much less memory.
+     *
+     * @param packed The packed block states, which are copied
+     * @param compress Whether or not to compress the palette
+     * @return The block store
+     */
+    public static AtomicBlockStore createBlockStore(int[] packed, boolean compress) {
+        return new AtomicPaletteBlockStore(BLOCKS.BITS, true, compress, DIRTY_ARRAY_SIZE, packed);
+    }
+
+    /**
+     * Creates a block store of the chunk size filled with blocks of ID and data zero.
+     *
+     * @return The block store
+     */
+    public static AtomicBlockStore createEmptyBlockStore() {
+        return new AtomicPaletteBlockStore(BLOCKS.BITS, true, DIRTY_ARRAY_SIZE);
+    }
+
     private static Material getPacked(int packed) {
         return Material.get((short) (packed >> 16), SUB_ID_MASK.extract((short) packed));
     }
@@ -0,0 +1,213 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.universe.world;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import gnu.trove.procedure.TObjectProcedure;
+
+import org.spoutcraft.client.universe.block.material.Materials;
+
+/**
+ * A vertical column of {@link org.spoutcraft.client.universe.world.Chunk}s, the unit in which the server sends and unloads chunks. Owns the chunks of its sections, a bit mask of the sections
+ * present and the column-wide data: the biomes and the height map.
+ * <p/>
+ * Columns are only modified by the universe thread, but can be read from any thread.
+ */
+public class ChunkColumn {
+    /**
+     * The number of sections (chunks) in a column.
+     */
+    public static final int HEIGHT = 16;
+    private final World world;
+    private final int x;
+    private final int z;
+    private final AtomicReferenceArray<Chunk> chunks = new AtomicReferenceArray<>(HEIGHT);
+    private volatile int sectionMask = 0;
+    private final byte[] biomes = new byte[Chunk.BLOCKS.AREA];
+    // The y coordinate above the highest non-air block, for each block column, or zero if there are none. Replaced as a whole on update, never modified once published
+    private volatile int[] heightMap = new int[Chunk.BLOCKS.AREA];
+    // Counts the changes to the blocks of the column, the height map is up to date if it was computed at the current count
+    private final AtomicInteger changeCount = new AtomicInteger();
+    private volatile int heightMapChangeCount = -1;
+
+    public ChunkColumn(World world, int x, int z) {
+        this.world = world;
+        this.x = x;
+        this.z = z;
+    }
+
+    public World getWorld() {
+        return world;
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getZ() {
+        return z;
+    }
+
+    public boolean hasChunk(int y) {
+        return (sectionMask >> y & 1) != 0;
+    }
+
+    public Chunk getChunk(int y) {
+        return y >= 0 && y < HEIGHT ? chunks.get(y) : null;
+    }
+
+    /**
+     * Sets the chunk in the section at its y coordinate, which must be in the [0, {@link #HEIGHT}) range. The chunk's x and z coordinates must be the ones of the column.
+     *
+     * @param chunk The chunk to set
+     * @return The chunk previously in the section, or null if it was empty
+     */
+    public Chunk setChunk(Chunk chunk) {
+        final int y = chunk.getY();
+        if (y < 0 || y >= HEIGHT || chunk.getX() != x || chunk.getZ() != z) {
+            throw new IllegalArgumentException("Chunk at " + chunk.getPosition() + " isn't in the column (" + x + ", " + z + ")");
+        }
+        final Chunk previous = chunks.getAndSet(y, chunk);
+        sectionMask |= 1 << y;
+        invalidateHeightMap();
+        world.journalChunk(x, y, z);
+        return previous;
+    }
+
+    public Chunk removeChunk(int y) {
+        if (y < 0 || y >= HEIGHT) {
+            return null;
+        }
+        final Chunk previous = chunks.getAndSet(y, null);
+        sectionMask &= ~(1 << y);
+        invalidateHeightMap();
+        if (previous != null) {
+            world.journalChunk(x, y, z);
+        }
+        return previous;
+    }
+
+    /**
+     * Returns the bit mask of the sections that have a chunk, bit n being set if the section at the y coordinate n has one.
+     *
+     * @return The section bit mask
+     */
+    public int getSectionMask() {
+        return sectionMask;
+    }
+
+    /**
+     * Executes the procedure for each chunk in the column, from the bottom up, stopping if it returns false.
+     *
+     * @param procedure The procedure to execute
+     * @return False if the iteration was stopped by the procedure, true otherwise
+     */
+    public boolean forEachChunk(TObjectProcedure<? super Chunk> procedure) {
+        for (int y = 0; y < HEIGHT; y++) {
+            final Chunk chunk = chunks.get(y);
+            if (chunk != null && !procedure.execute(chunk)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the biome ID for the block column.
+     *
+     * @param x The x coordinate of the block column, only the lower bits in the chunk size are used
+     * @param z The z coordinate of the block column, only the lower bits in the chunk size are used
+     * @return The biome ID
+     */
+    public int getBiome(int x, int z) {
+        return biomes[getIndex(x, z)] & 0xff;
+    }
+
+    /**
+     * Sets the biome IDs of all the block columns, in the z-x order (x varies the fastest).
+     *
+     * @param biomes The biome IDs to copy
+     */
+    public void setBiomes(byte[] biomes) {
+        System.arraycopy(biomes, 0, this.biomes, 0, this.biomes.length);
+    }
+
+    /**
+     * Returns the y coordinate right above the highest non-air block in the block column, or zero if the block column is empty.
+     *
+     * @param x The x coordinate of the block column, only the lower bits in the chunk size are used
+     * @param z The z coordinate of the block column, only the lower bits in the chunk size are used
+     * @return The height of the block column
+     */
+    public int getHeight(int x, int z) {
+        final int[] heights = heightMapChangeCount == changeCount.get() ? heightMap : updateHeightMap();
+        return heights[getIndex(x, z)];
+    }
+
+    /**
+     * Marks the height map as needing an update because blocks in the column changed. It will be recomputed on the next access.
+     */
+    public void invalidateHeightMap() {
+        changeCount.incrementAndGet();
+    }
+
+    private synchronized int[] updateHeightMap() {
+        // Read the count first so changes made during the update leave the map out of date
+        final int changes = changeCount.get();
+        if (heightMapChangeCount == changes) {
+            return heightMap;
+        }
+        final int[] heights = new int[Chunk.BLOCKS.AREA];
+        for (int zz = 0; zz < Chunk.BLOCKS.SIZE; zz++) {
+            for (int xx = 0; xx < Chunk.BLOCKS.SIZE; xx++) {
+                heights[getIndex(xx, zz)] = computeHeight(xx, zz);
+            }
+        }
+        // Publish the complete map before the count, readers that see the count also see the map
+        heightMap = heights;
+        heightMapChangeCount = changes;
+        return heights;
+    }
+
+    private int computeHeight(int x, int z) {
+        for (int y = HEIGHT - 1; y >= 0; y--) {
+            final Chunk chunk = chunks.get(y);
+            if (chunk == null) {
+                continue;
+            }
+            for (int yy = Chunk.BLOCKS.SIZE - 1; yy >= 0; yy--) {
+                if (chunk.getMaterial(x, yy, z) != Materials.AIR) {
+                    return (y << Chunk.BLOCKS.BITS) + yy + 1;
+                }
+            }
+        }
+        return 0;
+    }
+
+    private static int getIndex(int x, int z) {
+        return (z & Chunk.BLOCKS.MASK) << Chunk.BLOCKS.BITS | x & Chunk.BLOCKS.MASK;
+    }
+}
@@ -0,0 +1,306 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.universe.world;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import gnu.trove.procedure.TObjectProcedure;
+
+/**
+ * A thread safe map of objects keyed by chunk coordinates. The coordinates are packed into a single long key (21 bits per axis, so the coordinates must be in the [-2^20, 2^20) range) and the
+ * values are stored in open addressing tables of primitive keys, so lookups and iteration don't allocate any objects.
+ * <p/>
+ * Lookups are far more frequent than updates, so they don't take any lock. The entries are spread over {@link #STRIPES} tables by key. Updates lock the stripe and modify its table in place,
+ * incrementing the table's version before and after, so it's odd while the table is being modified. Lookups are optimistic: they read the version, probe the table and read the version again,
+ * retrying if it was odd or changed in between. Removals shift the following entries of the probe sequence back instead of rebuilding the table, so only growing a table allocates.
+ *
+ * @param <T> The type of the values
+ */
+public class ChunkMap<T> {
+    /**
+     * The number of tables the entries are spread over, a power of two.
+     */
+    public static final int STRIPES = 64;
+    private static final int STRIPE_BITS = Integer.numberOfTrailingZeros(STRIPES);
+    private static final long AXIS_MASK = 0x1fffff;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    public ChunkMap() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    public boolean containsKey(int x, int y, int z) {
+        return get(x, y, z) != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T get(int x, int y, int z) {
+        final long key = key(x, y, z);
+        final int hash = hash(key);
+        final Stripe stripe = stripes[hash & STRIPES - 1];
+        while (true) {
+            final Table table = stripe.table;
+            final int version = table.version;
+            if ((version & 1) == 0) {
+                final Object value = table.get(key, hash);
+                if (table.version == version) {
+                    return (T) value;
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public T put(int x, int y, int z, T value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Value cannot be null");
+        }
+        final long key = key(x, y, z);
+        final int hash = hash(key);
+        final Stripe stripe = stripes[hash & STRIPES - 1];
+        synchronized (stripe) {
+            Table table = stripe.table;
+            final int index = table.indexOf(key, hash);
+            if (index >= 0) {
+                table.version++;
+                final Object previous = table.values.getAndSet(index, value);
+                table.version++;
+                return (T) previous;
+            }
+            // Keep the load factor at or under a half, so the probe sequences stay short. The old table isn't modified after, so lookups still in it stay valid
+            if (table.size + 1 > table.capacity / 2) {
+                table = table.resize(table.capacity * 2);
+                stripe.table = table;
+            }
+            table.version++;
+            table.insert(key, hash, value);
+            table.version++;
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public T remove(int x, int y, int z) {
+        final long key = key(x, y, z);
+        final int hash = hash(key);
+        final Stripe stripe = stripes[hash & STRIPES - 1];
+        synchronized (stripe) {
+            final Table table = stripe.table;
+            final int index = table.indexOf(key, hash);
+            if (index < 0) {
+                return null;
+            }
+            final Object previous = table.values.get(index);
+            table.version++;
+            table.delete(index);
+            table.version++;
+            return (T) previous;
+        }
+    }
+
+    /**
+     * Returns the number of entries in the map. The stripes are counted one after the other, so the result may be off if the map is modified concurrently.
+     *
+     * @return The number of entries
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.table.size;
+        }
+        return size;
+    }
+
+    public void clear() {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.table = new Table(Table.MIN_CAPACITY);
+            }
+        }
+    }
+
+    /**
+     * Executes the procedure for each value in the map, stopping if it returns false. Each stripe is locked while its values are iterated, so the procedure must not modify the map. Entries added or
+     * removed concurrently in the stripes not iterated yet may or may not be seen.
+     *
+     * @param procedure The procedure to execute
+     * @return False if the iteration was stopped by the procedure, true otherwise
+     */
+    @SuppressWarnings("unchecked")
+    public boolean forEachValue(TObjectProcedure<? super T> procedure) {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                final AtomicReferenceArray<Object> values = stripe.table.values;
+                for (int i = 0; i < values.length(); i++) {
+                    final Object value = values.get(i);
+                    if (value != null && !procedure.execute((T) value)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    // Mixes the bits of the three axes, so neighbouring chunks land in different stripes and slots. The low bits pick the stripe, the others the slot
+    private static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    /**
+     * Packs the chunk coordinates into a single long key, 21 bits per axis.
+     *
+     * @param x The x coordinate
+     * @param y The y coordinate
+     * @param z The z coordinate
+     * @return The packed key
+     */
+    public static long key(int x, int y, int z) {
+        return (x & AXIS_MASK) << 42 | (y & AXIS_MASK) << 21 | z & AXIS_MASK;
+    }
+
+    /**
+     * Returns the x coordinate of a packed key.
+     *
+     * @param key The packed key
+     * @return The x coordinate
+     */
+    public static int keyX(long key) {
+        return (int) (key << 1 >> 43);
+    }
+
+    /**
+     * Returns the y coordinate of a packed key.
+     *
+     * @param key The packed key
+     * @return The y coordinate
+     */
+    public static int keyY(long key) {
+        return (int) (key << 22 >> 43);
+    }
+
+    /**
+     * Returns the z coordinate of a packed key.
+     *
+     * @param key The packed key
+     * @return The z coordinate
+     */
+    public static int keyZ(long key) {
+        return (int) (key << 43 >> 43);
+    }
+
+    private static class Stripe {
+        // Only replaced when growing, the previous table is never modified afterwards
+        private volatile Table table = new Table(Table.MIN_CAPACITY);
+    }
+
+    // An open addressing table with linear probing, a slot is empty if its value is null. The slots are read and written with volatile semantics, so lookups can validate them with the version
+    private static class Table {
+        private static final int MIN_CAPACITY = 8;
+        private final int capacity;
+        private final AtomicLongArray keys;
+        private final AtomicReferenceArray<Object> values;
+        // Odd while the table is being modified, incremented under the stripe lock
+        private volatile int version = 0;
+        private volatile int size = 0;
+
+        private Table(int capacity) {
+            this.capacity = capacity;
+            keys = new AtomicLongArray(capacity);
+            values = new AtomicReferenceArray<>(capacity);
+        }
+
+        private int indexOf(long key, int hash) {
+            final int mask = capacity - 1;
+            for (int i = home(hash, mask); values.get(i) != null; i = i + 1 & mask) {
+                if (keys.get(i) == key) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private Object get(long key, int hash) {
+            final int mask = capacity - 1;
+            Object value;
+            // The probe ends at an empty slot, there's always one since the table is never more than half full
+            for (int i = home(hash, mask); (value = values.get(i)) != null; i = i + 1 & mask) {
+                if (keys.get(i) == key) {
+                    return value;
+                }
+            }
+            return null;
+        }
+
+        private void insert(long key, int hash, Object value) {
+            final int mask = capacity - 1;
+            int i = home(hash, mask);
+            while (values.get(i) != null) {
+                i = i + 1 & mask;
+            }
+            keys.set(i, key);
+            values.set(i, value);
+            size++;
+        }
+
+        private void delete(int index) {
+            final int mask = capacity - 1;
+            // Shift back the following entries of the probe sequence which can't be reached anymore with the hole, so no tombstone is needed
+            int hole = index;
+            for (int i = hole + 1 & mask; values.get(i) != null; i = i + 1 & mask) {
+                final int home = home(hash(keys.get(i)), mask);
+                // The entry stays if its home is cyclically in (hole, i]
+                final boolean reachable = hole <= i ? hole < home && home <= i : hole < home || home <= i;
+                if (!reachable) {
+                    keys.set(hole, keys.get(i));
+                    values.set(hole, values.get(i));
+                    hole = i;
+                }
+            }
+            values.set(hole, null);
+            size--;
+        }
+
+        private Table resize(int capacity) {
+            final Table resized = new Table(capacity);
+            for (int i = 0; i < this.capacity; i++) {
+                final Object value = values.get(i);
+                if (value != null) {
+                    resized.insert(keys.get(i), hash(keys.get(i)), value);
+                }
+            }
+            return resized;
+        }
+
+        private static int home(int hash, int mask) {
+            return hash >>> STRIPE_BITS & mask;
+        }
+    }
+}
@@ -23,11 +23,12 @@
  */
 package org.spoutcraft.client.universe.world;
 
-import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
 
 import com.flowpowered.math.vector.Vector3i;
+import gnu.trove.procedure.TObjectProcedure;
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
 import org.spoutcraft.client.game.Difficulty;
 import org.spoutcraft.client.game.Dimension;
 import org.spoutcraft.client.game.GameMode;
@@ -46,7 +47,10 @@ public class World {
      */
     public static final long GAME_DAY_IRL = 1000 * 60;
     //Storage
-    private final Map<Vector3i, Chunk> chunks = new ConcurrentHashMap<>();
+    // Columns are keyed with a y coordinate of zero
+    private final ChunkMap<ChunkColumn> columns = new ChunkMap<>();
+    // The packed positions of the chunks added, removed or modified since the journal was last polled
+    private final TLongSet chunkJournal = new TLongHashSet();
     private final UUID id;
     private final String name;
     // Characteristics
@@ -95,47 +99,136 @@ public class World {
     }
 
     public boolean hasChunk(int x, int y, int z) {
-        return hasChunk(new Vector3i(x, y, z));
+        final ChunkColumn column = columns.get(x, 0, z);
+        return column != null && column.hasChunk(y);
     }
 
     public boolean hasChunk(Vector3i position) {
-        return chunks.containsKey(position);
+        return hasChunk(position.getX(), position.getY(), position.getZ());
     }
 
     public Chunk getChunk(int x, int y, int z) {
-        return getChunk(new Vector3i(x, y, z));
+        final ChunkColumn column = columns.get(x, 0, z);
+        return column != null ? column.getChunk(y) : null;
     }
 
     public Chunk getChunk(Vector3i position) {
-        return chunks.get(position);
+        return getChunk(position.getX(), position.getY(), position.getZ());
     }
 
+    /**
+     * Sets the chunk in the world, creating its column if it doesn't exist yet. Must only be called from the universe thread.
+     *
+     * @param chunk The chunk to set
+     * @return The chunk previously at the same position, or null if there was none
+     */
     public Chunk setChunk(Chunk chunk) {
-        return chunks.put(chunk.getPosition(), chunk);
+        ChunkColumn column = columns.get(chunk.getX(), 0, chunk.getZ());
+        if (column == null) {
+            column = new ChunkColumn(this, chunk.getX(), chunk.getZ());
+            columns.put(chunk.getX(), 0, chunk.getZ(), column);
+        }
+        return column.setChunk(chunk);
     }
 
     public Chunk removeChunk(int x, int y, int z) {
-        return removeChunk(new Vector3i(x, y, z));
+        final ChunkColumn column = columns.get(x, 0, z);
+        return column != null ? column.removeChunk(y) : null;
     }
 
     public Chunk removeChunk(Vector3i position) {
-        return chunks.remove(position);
+        return removeChunk(position.getX(), position.getY(), position.getZ());
+    }
+
+    public boolean hasChunkColumn(int x, int z) {
+        return columns.containsKey(x, 0, z);
+    }
+
+    public ChunkColumn getChunkColumn(int x, int z) {
+        return columns.get(x, 0, z);
     }
 
     /**
-     * Removes an entire column of {@link org.spoutcraft.client.universe.world.Chunk} from the world, between the the chunk Y coordinates, (start inclusive, end exclusive).
+     * Sets the {@link org.spoutcraft.client.universe.world.ChunkColumn} in the world, replacing any existing column and all of its chunks at once.
      *
-     * @param columnX The x-axis chunk coordinate of the column
-     * @param columnZ The z-axis chunk coordinate of the column
+     * @param column The column to set
+     * @return The column previously at the same position, or null if there was none
      */
-    public void removeChunkColumn(int columnX, int columnZ, int startY, int endY) {
-        for (; startY < endY; startY++) {
-            removeChunk(columnX, startY, columnZ);
+    public ChunkColumn setChunkColumn(ChunkColumn column) {
+        final ChunkColumn previous = columns.put(column.getX(), 0, column.getZ(), column);
+        journalChunkColumn(column.getX(), column.getZ(), column.getSectionMask() | (previous != null ? previous.getSectionMask() : 0));
+        return previous;
+    }
+
+    /**
+     * Removes an entire {@link org.spoutcraft.client.universe.world.ChunkColumn} from the world, with all of its chunks.
+     *
+     * @param x The x-axis chunk coordinate of the column
+     * @param z The z-axis chunk coordinate of the column
+     * @return The removed column, or null if there was none
+     */
+    public ChunkColumn removeChunkColumn(int x, int z) {
+        final ChunkColumn column = columns.remove(x, 0, z);
+        if (column != null) {
+            journalChunkColumn(x, z, column.getSectionMask());
         }
+        return column;
     }
 
-    public Map<Vector3i, Chunk> getChunks() {
-        return chunks;
+    public ChunkMap<ChunkColumn> getChunkColumns() {
+        return columns;
+    }
+
+    /**
+     * Executes the procedure for each chunk in the world, column by column, stopping if it returns false. The world must not be modified by the procedure.
+     *
+     * @param procedure The procedure to execute
+     * @return False if the iteration was stopped by the procedure, true otherwise
+     */
+    public boolean forEachChunk(final TObjectProcedure<? super Chunk> procedure) {
+        return columns.forEachValue(new TObjectProcedure<ChunkColumn>() {
+            @Override
+            public boolean execute(ChunkColumn column) {
+                return column.forEachChunk(procedure);
+            }
+        });
+    }
+
+    /**
+     * Records that the chunk at the position was added, removed or modified. The world's snapshot only looks at the recorded chunks when updating.
+     *
+     * @param x The x coordinate of the chunk
+     * @param y The y coordinate of the chunk
+     * @param z The z coordinate of the chunk
+     */
+    public void journalChunk(int x, int y, int z) {
+        synchronized (chunkJournal) {
+            chunkJournal.add(ChunkMap.key(x, y, z));
+        }
+    }
+
+    private void journalChunkColumn(int x, int z, int sectionMask) {
+        synchronized (chunkJournal) {
+            for (int y = 0; y < ChunkColumn.HEIGHT; y++) {
+                if ((sectionMask >> y & 1) != 0) {
+                    chunkJournal.add(ChunkMap.key(x, y, z));
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the packed positions (see {@link org.spoutcraft.client.universe.world.ChunkMap#key(int, int, int)}) of the chunks added, removed or modified since the last call, and clears the
+     * journal. Each position is only returned once, no matter how many times it changed.
+     *
+     * @return The packed positions of the changed chunks
+     */
+    public long[] pollChunkJournal() {
+        synchronized (chunkJournal) {
+            final long[] changed = chunkJournal.toArray();
+            chunkJournal.clear();
+            return changed;
+        }
     }
 
     public GameMode getGameMode() {
@@ -0,0 +1,48 @@
+// $shader_type: vertex
+
+// $texture_layout: chunkOffsets = 0
+
+#version 330
+
+// Vertices per block of the chunk arena, each block has the position of its chunk
+const int BLOCK_VERTICES = 256;
+
+// Packed chunk vertex: x, y, z and face index as unsigned bytes
+layout(location = 0) in uvec4 positionFace;
+// Material ID, and the material sub ID (low byte) with the ambient occlusion bits (high byte)
+layout(location = 1) in uvec2 materialData;
+
+out vec4 positionClip;
+out vec4 previousPositionClip;
+out vec3 normalView;
+
+uniform samplerBuffer chunkOffsets;
+uniform mat4 modelMatrix;
+uniform mat4 viewMatrix;
+uniform mat4 normalMatrix;
+uniform mat4 projectionMatrix;
+uniform mat4 previousModelMatrix;
+uniform mat4 previousViewMatrix;
+uniform mat4 previousProjectionMatrix;
+
+// North, south, bottom, top, east and west
+const vec3 FACE_NORMALS[6] = vec3[](
+    vec3(-1, 0, 0), vec3(1, 0, 0),
+    vec3(0, -1, 0), vec3(0, 1, 0),
+    vec3(0, 0, -1), vec3(0, 0, 1)
+);
+
+void main() {
+    // The vertex ID includes the base vertex of the mesh, so it can be used to find the chunk
+    vec3 chunkOffset = texelFetch(chunkOffsets, gl_VertexID / BLOCK_VERTICES).xyz;
+
+    vec4 position = vec4(chunkOffset + vec3(positionFace.xyz), 1);
+
+    positionClip = projectionMatrix * viewMatrix * modelMatrix * position;
+
+    previousPositionClip = previousProjectionMatrix * previousViewMatrix * previousModelMatrix * position;
+
+    normalView = (normalMatrix * vec4(FACE_NORMALS[positionFace.w], 0)).xyz;
+
+    gl_Position = positionClip;
+}
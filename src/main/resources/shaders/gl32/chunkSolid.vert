@@ -0,0 +1,39 @@
+// $shader_type: vertex
+
+#version 330
+
+// Packed chunk vertex: x, y, z and face index as unsigned bytes
+layout(location = 0) in uvec4 positionFace;
+// Material ID, and the material sub ID (low byte) with the ambient occlusion bits (high byte)
+layout(location = 1) in uvec2 materialData;
+
+out vec4 positionClip;
+out vec4 previousPositionClip;
+out vec3 normalView;
+
+uniform mat4 modelMatrix;
+uniform mat4 viewMatrix;
+uniform mat4 normalMatrix;
+uniform mat4 projectionMatrix;
+uniform mat4 previousModelMatrix;
+uniform mat4 previousViewMatrix;
+uniform mat4 previousProjectionMatrix;
+
+// North, south, bottom, top, east and west
+const vec3 FACE_NORMALS[6] = vec3[](
+    vec3(-1, 0, 0), vec3(1, 0, 0),
+    vec3(0, -1, 0), vec3(0, 1, 0),
+    vec3(0, 0, -1), vec3(0, 0, 1)
+);
+
+void main() {
+    vec4 position = vec4(vec3(positionFace.xyz), 1);
+
+    positionClip = projectionMatrix * viewMatrix * modelMatrix * position;
+
+    previousPositionClip = previousProjectionMatrix * previousViewMatrix * previousModelMatrix * position;
+
+    normalView = (normalMatrix * vec4(FACE_NORMALS[positionFace.w], 0)).xyz;
+
+    gl_Position = positionClip;
+}
@@ -0,0 +1,7 @@
+// $shader_type: fragment
+
+#version 330
+
+void main() {
+    // Only the depth test matters, the samples are counted by the occlusion query
+}
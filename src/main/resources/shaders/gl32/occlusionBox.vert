@@ -0,0 +1,17 @@
+// $shader_type: vertex
+
+#version 330
+
+layout(location = 0) in vec3 position;
+
+uniform mat4 viewMatrix;
+uniform mat4 projectionMatrix;
+uniform vec3 boxPosition;
+uniform vec3 boxSize;
+
+void main() {
+    // The cuboid is centered on the origin with a unit size, move it to the box
+    vec3 positionWorld = boxPosition + (position + 0.5) * boxSize;
+
+    gl_Position = projectionMatrix * viewMatrix * vec4(positionWorld, 1);
+}
@@ -0,0 +1,88 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.nterface.culling;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import com.flowpowered.math.matrix.Matrix4f;
+import com.flowpowered.math.vector.Vector3i;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ */
+public class ChunkColumnTreeTest {
+    @Test
+    public void testPutGetRemove() {
+        final ChunkColumnTree<String> tree = new ChunkColumnTree<>();
+        Assert.assertNull(tree.put(new Vector3i(0, 0, 0), "a"));
+        Assert.assertNull(tree.put(new Vector3i(0, 3, 0), "b"));
+        Assert.assertNull(tree.put(new Vector3i(-40, 1, 70), "c"));
+        Assert.assertEquals("a", tree.put(new Vector3i(0, 0, 0), "d"));
+        Assert.assertEquals(3, tree.size());
+        Assert.assertEquals("d", tree.get(0, 0, 0));
+        Assert.assertEquals("b", tree.get(0, 3, 0));
+        Assert.assertEquals("c", tree.get(-40, 1, 70));
+        Assert.assertNull(tree.get(0, 1, 0));
+        Assert.assertNull(tree.get(1, 0, 0));
+        Assert.assertTrue(tree.hasColumn(-40, 70));
+        Assert.assertFalse(tree.hasColumn(-40, 71));
+        Assert.assertEquals("c", tree.remove(new Vector3i(-40, 1, 70)));
+        Assert.assertNull(tree.remove(new Vector3i(-40, 1, 70)));
+        Assert.assertFalse(tree.hasColumn(-40, 70));
+        Assert.assertEquals(2, tree.size());
+        tree.clear();
+        Assert.assertEquals(0, tree.size());
+        Assert.assertNull(tree.get(0, 0, 0));
+    }
+
+    @Test
+    public void testCull() {
+        final ChunkColumnTree<Vector3i> tree = new ChunkColumnTree<>();
+        for (int x = -8; x < 8; x++) {
+            for (int z = -8; z < 8; z++) {
+                for (int y = 0; y < 4; y++) {
+                    final Vector3i position = new Vector3i(x, y, z);
+                    tree.put(position, position);
+                }
+            }
+        }
+        // An orthographic frustum of the box from -40 to 40 blocks on every axis, which contains the chunks from -3 to 2 inclusively
+        final Frustum frustum = new Frustum();
+        frustum.update(new Matrix4f(0.025f, 0, 0, 0, 0, 0.025f, 0, 0, 0, 0, 0.025f, 0, 0, 0, 0, 1), Matrix4f.IDENTITY);
+        final Set<Vector3i> visible = new HashSet<>();
+        tree.cull(frustum, visible);
+        for (int x = -8; x < 8; x++) {
+            for (int z = -8; z < 8; z++) {
+                for (int y = 0; y < 4; y++) {
+                    final boolean inside = x >= -3 && x <= 2 && z >= -3 && z <= 2 && y <= 2;
+                    Assert.assertEquals(x + ", " + y + ", " + z, inside, visible.contains(new Vector3i(x, y, z)));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.nterface.culling;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.flowpowered.math.matrix.Matrix4f;
+import com.flowpowered.math.vector.Vector3i;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.spoutcraft.client.nterface.culling.ConnectivityCuller.ConnectivityProvider;
+import org.spoutcraft.client.nterface.mesh.ChunkConnectivity;
+
+/**
+ *
+ */
+public class ConnectivityCullerTest {
+    private static final ConnectivityProvider<TestChunk> CONNECTIVITY = new ConnectivityProvider<TestChunk>() {
+        @Override
+        public int getConnectivity(TestChunk chunk) {
+            return chunk.connectivity;
+        }
+    };
+    private final ChunkColumnTree<TestChunk> chunks = new ChunkColumnTree<>();
+    private final List<TestChunk> all = new ArrayList<>();
+
+    @Test
+    public void testWalkThroughMissingSections() {
+        // Caves under solid ground, with the camera on a hill the other columns don't have a section for
+        for (int x = -2; x <= 3; x++) {
+            for (int z = -1; z <= 1; z++) {
+                add(x, 0, z, ChunkConnectivity.ALL);
+                add(x, 1, z, ChunkConnectivity.NONE);
+            }
+        }
+        final TestChunk hill = add(0, 2, 0, ChunkConnectivity.ALL);
+        final TestChunk tree = add(3, 2, 0, ChunkConnectivity.ALL);
+        final List<TestChunk> visible = cull(0, 2, 0);
+        Assert.assertTrue(visible.contains(hill));
+        Assert.assertTrue(visible.contains(tree));
+        for (TestChunk chunk : all) {
+            if (chunk.y == 1) {
+                Assert.assertTrue("Ground " + chunk + " should be visible", visible.contains(chunk));
+            } else if (chunk.y == 0) {
+                Assert.assertFalse("Cave " + chunk + " should be hidden", visible.contains(chunk));
+            }
+        }
+    }
+
+    @Test
+    public void testWalkFromAboveTheWorld() {
+        for (int x = -1; x <= 1; x++) {
+            add(x, 0, 0, ChunkConnectivity.ALL);
+        }
+        final List<TestChunk> visible = cull(0, 20, 0);
+        Assert.assertEquals(all.size(), visible.size());
+    }
+
+    @Test
+    public void testWallSplitsChunks() {
+        // A line of chunks along x, split by a solid one in the middle
+        for (int x = -3; x <= 3; x++) {
+            add(x, 0, 0, x == 1 ? ChunkConnectivity.NONE : ChunkConnectivity.ALL);
+        }
+        // Fill the sections above and below so the walk can't go around
+        for (int x = -3; x <= 3; x++) {
+            for (int y = 1; y < 16; y++) {
+                add(x, y, 0, ChunkConnectivity.NONE);
+            }
+        }
+        final List<TestChunk> visible = cull(-3, 0, 0);
+        Assert.assertTrue(visible.contains(chunks.get(0, 0, 0)));
+        Assert.assertTrue(visible.contains(chunks.get(1, 0, 0)));
+        Assert.assertFalse(visible.contains(chunks.get(2, 0, 0)));
+        Assert.assertFalse(visible.contains(chunks.get(3, 0, 0)));
+    }
+
+    @Test
+    public void testOutsideLoadedColumns() {
+        add(0, 0, 0, ChunkConnectivity.ALL);
+        final List<TestChunk> visible = new ArrayList<>(all);
+        Assert.assertFalse(new ConnectivityCuller<>(chunks, CONNECTIVITY).cull(createFrustum(), 5, 0, 5, visible));
+        Assert.assertEquals(all, visible);
+    }
+
+    private TestChunk add(int x, int y, int z, int connectivity) {
+        final TestChunk chunk = new TestChunk(x, y, z, connectivity);
+        chunks.put(new Vector3i(x, y, z), chunk);
+        all.add(chunk);
+        return chunk;
+    }
+
+    private List<TestChunk> cull(int cameraX, int cameraY, int cameraZ) {
+        final List<TestChunk> visible = new ArrayList<>(all);
+        Assert.assertTrue(new ConnectivityCuller<>(chunks, CONNECTIVITY).cull(createFrustum(), cameraX, cameraY, cameraZ, visible));
+        return visible;
+    }
+
+    private static Frustum createFrustum() {
+        // Everything within 1000 blocks of the origin is inside
+        final Frustum frustum = new Frustum();
+        frustum.update(new Matrix4f(0.001f, 0, 0, 0, 0, 0.001f, 0, 0, 0, 0, 0.001f, 0, 0, 0, 0, 1), Matrix4f.IDENTITY);
+        return frustum;
+    }
+
+    private static class TestChunk {
+        private final int x;
+        private final int y;
+        private final int z;
+        private final int connectivity;
+
+        private TestChunk(int x, int y, int z, int connectivity) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.connectivity = connectivity;
+        }
+
+        @Override
+        public String toString() {
+            return "(" + x + ", " + y + ", " + z + ")";
+        }
+    }
+}
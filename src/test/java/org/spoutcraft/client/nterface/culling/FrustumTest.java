@@ -0,0 +1,68 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.nterface.culling;
+
+import com.flowpowered.math.matrix.Matrix4f;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.spoutcraft.client.nterface.culling.Frustum.Intersection;
+
+/**
+ *
+ */
+public class FrustumTest {
+    // An orthographic projection of the box from -10 to 10 on every axis
+    private static final Matrix4f PROJECTION = new Matrix4f(0.1f, 0, 0, 0, 0, 0.1f, 0, 0, 0, 0, 0.1f, 0, 0, 0, 0, 1);
+
+    @Test
+    public void testPlanes() {
+        final Frustum frustum = new Frustum();
+        frustum.update(PROJECTION, Matrix4f.IDENTITY);
+        Assert.assertEquals(Intersection.INSIDE, frustum.intersectsBox(-5, -5, -5, 5, 5, 5));
+        Assert.assertEquals(Intersection.INTERSECTING, frustum.intersectsBox(5, -5, -5, 15, 5, 5));
+        Assert.assertEquals(Intersection.INTERSECTING, frustum.intersectsBox(-20, -20, -20, 20, 20, 20));
+        // Outside of each of the six planes
+        Assert.assertEquals(Intersection.OUTSIDE, frustum.intersectsBox(-15, -5, -5, -11, 5, 5));
+        Assert.assertEquals(Intersection.OUTSIDE, frustum.intersectsBox(11, -5, -5, 15, 5, 5));
+        Assert.assertEquals(Intersection.OUTSIDE, frustum.intersectsBox(-5, -15, -5, 5, -11, 5));
+        Assert.assertEquals(Intersection.OUTSIDE, frustum.intersectsBox(-5, 11, -5, 5, 15, 5));
+        Assert.assertEquals(Intersection.OUTSIDE, frustum.intersectsBox(-5, -5, -15, 5, 5, -11));
+        Assert.assertEquals(Intersection.OUTSIDE, frustum.intersectsBox(-5, -5, 11, 5, 5, 15));
+        Assert.assertFalse(frustum.isBoxVisible(11, 11, 11, 12, 12, 12));
+        Assert.assertTrue(frustum.isBoxVisible(9, 9, 9, 12, 12, 12));
+    }
+
+    @Test
+    public void testView() {
+        // The view matrix moves the world by -20 on x, as for a camera at x = 20
+        final Matrix4f view = new Matrix4f(1, 0, 0, -20, 0, 1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1);
+        final Frustum frustum = new Frustum();
+        frustum.update(PROJECTION, view);
+        Assert.assertEquals(Intersection.INSIDE, frustum.intersectsBox(15, -5, -5, 25, 5, 5));
+        Assert.assertEquals(Intersection.OUTSIDE, frustum.intersectsBox(-5, -5, -5, 5, 5, 5));
+        Assert.assertEquals(Intersection.INTERSECTING, frustum.intersectsBox(5, -5, -5, 15, 5, 5));
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.nterface.mesh;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.spoutcraft.client.universe.block.BlockFace;
+import org.spoutcraft.client.universe.block.BlockFaces;
+import org.spoutcraft.client.universe.block.material.Materials;
+import org.spoutcraft.client.universe.world.Chunk;
+
+/**
+ *
+ */
+public class ChunkConnectivityTest {
+    private static final int SIZE = Chunk.BLOCKS.SIZE;
+
+    @Test
+    public void testPairBits() {
+        // Each pair of distinct faces has its own bit, the same both ways
+        int bits = 0;
+        for (BlockFace from : BlockFaces.NESWBT) {
+            Assert.assertFalse(ChunkConnectivity.isConnected(ChunkConnectivity.ALL, from, from));
+            for (BlockFace to : BlockFaces.NESWBT) {
+                if (from == to) {
+                    continue;
+                }
+                Assert.assertTrue(ChunkConnectivity.isConnected(ChunkConnectivity.ALL, from, to));
+                Assert.assertFalse(ChunkConnectivity.isConnected(ChunkConnectivity.NONE, from, to));
+                for (int bit = 0; bit < 15; bit++) {
+                    if (ChunkConnectivity.isConnected(1 << bit, from, to)) {
+                        Assert.assertTrue(ChunkConnectivity.isConnected(1 << bit, to, from));
+                        bits |= 1 << bit;
+                    }
+                }
+            }
+        }
+        Assert.assertEquals(ChunkConnectivity.ALL, bits);
+    }
+
+    @Test
+    public void testEmpty() {
+        final OccupancyGrid grid = new OccupancyGrid();
+        grid.computeFaces();
+        Assert.assertEquals(ChunkConnectivity.ALL, ChunkConnectivity.compute(grid));
+    }
+
+    @Test
+    public void testSolid() {
+        final OccupancyGrid grid = new OccupancyGrid();
+        fill(grid, 0, 0, 0, SIZE, SIZE, SIZE);
+        grid.computeFaces();
+        Assert.assertEquals(ChunkConnectivity.NONE, ChunkConnectivity.compute(grid));
+    }
+
+    @Test
+    public void testWall() {
+        // A solid wall across the middle of the x axis, the north and south faces are on either side
+        final OccupancyGrid grid = new OccupancyGrid();
+        fill(grid, 8, 0, 0, 9, SIZE, SIZE);
+        grid.computeFaces();
+        final int connectivity = ChunkConnectivity.compute(grid);
+        Assert.assertFalse(ChunkConnectivity.isConnected(connectivity, BlockFace.NORTH, BlockFace.SOUTH));
+        Assert.assertTrue(ChunkConnectivity.isConnected(connectivity, BlockFace.NORTH, BlockFace.TOP));
+        Assert.assertTrue(ChunkConnectivity.isConnected(connectivity, BlockFace.SOUTH, BlockFace.TOP));
+        Assert.assertTrue(ChunkConnectivity.isConnected(connectivity, BlockFace.TOP, BlockFace.BOTTOM));
+        Assert.assertTrue(ChunkConnectivity.isConnected(connectivity, BlockFace.EAST, BlockFace.WEST));
+        // A single hole in the wall connects everything again
+        grid.setMaterial(8, 3, 12, Materials.AIR);
+        grid.computeFaces();
+        Assert.assertEquals(ChunkConnectivity.ALL, ChunkConnectivity.compute(grid));
+    }
+
+    @Test
+    public void testTunnel() {
+        // A solid chunk with a hollow tunnel along the z axis, which only connects the east and west faces
+        final OccupancyGrid grid = new OccupancyGrid();
+        fill(grid, 0, 0, 0, SIZE, SIZE, SIZE);
+        for (int z = 0; z < SIZE; z++) {
+            grid.setMaterial(7, 7, z, Materials.AIR);
+            grid.setMaterial(8, 7, z, Materials.AIR);
+            grid.setMaterial(7, 8, z, Materials.AIR);
+            grid.setMaterial(8, 8, z, Materials.AIR);
+        }
+        grid.computeFaces();
+        final int connectivity = ChunkConnectivity.compute(grid);
+        Assert.assertTrue(ChunkConnectivity.isConnected(connectivity, BlockFace.EAST, BlockFace.WEST));
+        for (BlockFace from : BlockFaces.NESWBT) {
+            for (BlockFace to : BlockFaces.NESWBT) {
+                if (!(from == BlockFace.EAST && to == BlockFace.WEST || from == BlockFace.WEST && to == BlockFace.EAST)) {
+                    Assert.assertFalse(from + " to " + to, ChunkConnectivity.isConnected(connectivity, from, to));
+                }
+            }
+        }
+        // A dead end doesn't connect anything
+        grid.setMaterial(7, 7, SIZE - 1, Materials.SOLID);
+        grid.setMaterial(8, 7, SIZE - 1, Materials.SOLID);
+        grid.setMaterial(7, 8, SIZE - 1, Materials.SOLID);
+        grid.setMaterial(8, 8, SIZE - 1, Materials.SOLID);
+        grid.computeFaces();
+        Assert.assertEquals(ChunkConnectivity.NONE, ChunkConnectivity.compute(grid));
+    }
+
+    private static void fill(OccupancyGrid grid, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        for (int x = minX; x < maxX; x++) {
+            for (int y = minY; y < maxY; y++) {
+                for (int z = minZ; z < maxZ; z++) {
+                    grid.setMaterial(x, y, z, Materials.SOLID);
+                }
+            }
+        }
+    }
+}
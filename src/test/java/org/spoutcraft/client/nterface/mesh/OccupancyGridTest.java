@@ -0,0 +1,102 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.nterface.mesh;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.spoutcraft.client.universe.block.BlockFace;
+import org.spoutcraft.client.universe.block.BlockFaces;
+import org.spoutcraft.client.universe.block.material.Materials;
+
+/**
+ *
+ */
+public class OccupancyGridTest {
+    @Test
+    public void testSingleBlock() {
+        final OccupancyGrid grid = new OccupancyGrid();
+        grid.setMaterial(3, 4, 5, Materials.SOLID);
+        grid.computeFaces();
+        // The row bits are offset by one, for the neighbouring block at x = -1
+        Assert.assertEquals(1L << 4, grid.getOpaque(4, 5));
+        for (BlockFace face : BlockFaces.NESWBT) {
+            Assert.assertEquals(1L << 4, grid.getFaces(face, 4, 5));
+        }
+        Assert.assertEquals(0, grid.getFaces(BlockFace.TOP, 5, 5));
+        Assert.assertEquals(0, grid.getFaces(BlockFace.WEST, 4, 6));
+        Assert.assertSame(Materials.SOLID, grid.getMaterial(3, 4, 5));
+        Assert.assertSame(Materials.AIR, grid.getMaterial(4, 4, 5));
+    }
+
+    @Test
+    public void testAdjacentBlocks() {
+        final OccupancyGrid grid = new OccupancyGrid();
+        grid.setMaterial(3, 4, 5, Materials.SOLID);
+        grid.setMaterial(4, 4, 5, Materials.SOLID);
+        grid.setMaterial(3, 5, 5, Materials.SOLID);
+        grid.computeFaces();
+        Assert.assertEquals(3L << 4, grid.getOpaque(4, 5));
+        // The faces between the blocks are hidden
+        Assert.assertEquals(1L << 4, grid.getFaces(BlockFace.NORTH, 4, 5));
+        Assert.assertEquals(1L << 5, grid.getFaces(BlockFace.SOUTH, 4, 5));
+        Assert.assertEquals(1L << 5, grid.getFaces(BlockFace.TOP, 4, 5));
+        Assert.assertEquals(1L << 4, grid.getFaces(BlockFace.TOP, 5, 5));
+        Assert.assertEquals(0, grid.getFaces(BlockFace.BOTTOM, 5, 5));
+        Assert.assertEquals(3L << 4, grid.getFaces(BlockFace.BOTTOM, 4, 5));
+    }
+
+    @Test
+    public void testNeighbourBlocks() {
+        final OccupancyGrid grid = new OccupancyGrid();
+        // A block of each neighbouring chunk, next to the chunk's edges
+        grid.setMaterial(-1, 0, 0, Materials.SOLID);
+        grid.setMaterial(0, 16, 0, Materials.SOLID);
+        grid.computeFaces();
+        // Only the faces looking towards the chunk are in its planes
+        Assert.assertTrue(grid.hasFace(BlockFace.SOUTH, -1, 0, 0));
+        Assert.assertFalse(grid.hasFace(BlockFace.NORTH, -1, 0, 0));
+        Assert.assertFalse(grid.hasFace(BlockFace.TOP, -1, 0, 0));
+        Assert.assertTrue(grid.hasFace(BlockFace.BOTTOM, 0, 16, 0));
+        Assert.assertFalse(grid.hasFace(BlockFace.TOP, 0, 16, 0));
+        // A block of the chunk against a neighbour has no face there
+        grid.setMaterial(0, 0, 0, Materials.SOLID);
+        grid.computeFaces();
+        Assert.assertFalse(grid.hasFace(BlockFace.NORTH, 0, 0, 0));
+        Assert.assertFalse(grid.hasFace(BlockFace.SOUTH, -1, 0, 0));
+        Assert.assertTrue(grid.hasFace(BlockFace.SOUTH, 0, 0, 0));
+    }
+
+    @Test
+    public void testClear() {
+        final OccupancyGrid grid = new OccupancyGrid();
+        grid.setMaterial(7, 7, 7, Materials.SOLID);
+        grid.computeFaces();
+        grid.clear();
+        grid.computeFaces();
+        Assert.assertEquals(0, grid.getOpaque(7, 7));
+        Assert.assertEquals(0, grid.getFaces(BlockFace.TOP, 7, 7));
+        Assert.assertSame(Materials.AIR, grid.getMaterial(7, 7, 7));
+    }
+}
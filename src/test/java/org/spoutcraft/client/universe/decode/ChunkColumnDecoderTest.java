@@ -0,0 +1,125 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.universe.decode;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+import com.flowpowered.commons.store.block.AtomicBlockStore;
+import io.netty.buffer.Unpooled;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.spoutcraft.client.network.message.play.ChunkDataMessage;
+import org.spoutcraft.client.universe.block.material.Materials;
+import org.spoutcraft.client.universe.world.Chunk;
+
+/**
+ *
+ */
+public class ChunkColumnDecoderTest {
+    private static final int AIR = Materials.AIR.getID() << 16;
+    private static final int SOLID = Materials.SOLID.getID() << 16;
+    private static final int VOLUME = Chunk.BLOCKS.VOLUME;
+    private static final int HALF_VOLUME = Chunk.BLOCKS.HALF_VOLUME;
+
+    @Test
+    public void testDecodeWithSkyLight() throws IOException {
+        final DecodedChunkColumn column = new ChunkColumnDecoder().decode(createMessage(true), 7);
+        Assert.assertEquals(7, column.getSequence());
+        Assert.assertEquals(3, column.getX());
+        Assert.assertEquals(-4, column.getZ());
+        // The section between the two sent ones is missing
+        Assert.assertNull(column.getSection(1));
+        Assert.assertNull(column.getSection(3));
+        // Even blocks are in the lower half of the bytes, odd blocks in the upper half
+        final AtomicBlockStore partial = column.getSection(0);
+        Assert.assertEquals(AIR | 2 << 8 | 9 << 4 | 15, partial.getFullData(0, 0, 0));
+        Assert.assertEquals(SOLID | 7 << 8 | 15, partial.getFullData(1, 0, 0));
+        // The index order is y, z then x
+        Assert.assertEquals(SOLID | 15, partial.getFullData(0, 1, 0));
+        Assert.assertEquals(AIR | 15, partial.getFullData(0, 0, 1));
+        // Sky lit air everywhere
+        final AtomicBlockStore uniform = column.getSection(2);
+        Assert.assertEquals(AIR | 15, uniform.getFullData(0, 0, 0));
+        Assert.assertEquals(AIR | 15, uniform.getFullData(5, 6, 7));
+        Assert.assertEquals(Chunk.BLOCKS.AREA, column.getBiomes().length);
+        Assert.assertEquals(1, column.getBiomes()[0]);
+    }
+
+    @Test
+    public void testDecodeWithoutSkyLight() throws IOException {
+        // Sky light is deduced from the data length, without it the light is zero
+        final DecodedChunkColumn column = new ChunkColumnDecoder().decode(createMessage(false), 0);
+        final AtomicBlockStore partial = column.getSection(0);
+        Assert.assertEquals(AIR | 2 << 8 | 9 << 4, partial.getFullData(0, 0, 0));
+        Assert.assertEquals(SOLID | 7 << 8, partial.getFullData(1, 0, 0));
+        Assert.assertEquals(AIR, column.getSection(2).getFullData(5, 6, 7));
+    }
+
+    @Test(expected = IOException.class)
+    public void testUnexpectedLength() throws IOException {
+        final byte[] data = new byte[VOLUME + 1];
+        new ChunkColumnDecoder().decode(new ChunkDataMessage(0, 0, false, (short) 1, (short) 0, 0, Unpooled.wrappedBuffer(deflate(data))), 0);
+    }
+
+    @Test
+    public void testColumnLength() {
+        Assert.assertEquals(2 * (VOLUME + 3 * HALF_VOLUME) + Chunk.BLOCKS.AREA, ChunkColumnDecoder.getColumnLength((short) 0b101, (short) 0, true, true));
+        Assert.assertEquals(2 * (VOLUME + 2 * HALF_VOLUME) + HALF_VOLUME, ChunkColumnDecoder.getColumnLength((short) 0b101, (short) 0b100, false, false));
+    }
+
+    // Sections 0 and 2, the first with a few distinct blocks and the second uniform
+    private static ChunkDataMessage createMessage(boolean skyLight) {
+        final int sectionLength = VOLUME + HALF_VOLUME * (skyLight ? 3 : 2);
+        final byte[] data = new byte[2 * sectionLength + Chunk.BLOCKS.AREA];
+        final int metadataStart = 2 * VOLUME;
+        final int blockLightStart = metadataStart + 2 * HALF_VOLUME;
+        final int skyLightStart = blockLightStart + 2 * HALF_VOLUME;
+        // Block IDs, at (1, 0, 0) and (0, 1, 0)
+        data[1] = 5;
+        data[Chunk.BLOCKS.AREA] = 1;
+        // Metadata 2 and 7 for the first two blocks, block light 9 for the first one
+        data[metadataStart] = 0x72;
+        data[blockLightStart] = 0x09;
+        if (skyLight) {
+            Arrays.fill(data, skyLightStart, skyLightStart + 2 * HALF_VOLUME, (byte) 0xff);
+        }
+        Arrays.fill(data, 2 * sectionLength, data.length, (byte) 1);
+        final byte[] compressed = deflate(data);
+        return new ChunkDataMessage(3, -4, true, (short) 0b101, (short) 0, compressed.length, Unpooled.wrappedBuffer(compressed));
+    }
+
+    private static byte[] deflate(byte[] data) {
+        final Deflater deflater = new Deflater();
+        deflater.setInput(data);
+        deflater.finish();
+        final byte[] buffer = new byte[data.length + 64];
+        final int length = deflater.deflate(buffer);
+        deflater.end();
+        return Arrays.copyOf(buffer, length);
+    }
+}
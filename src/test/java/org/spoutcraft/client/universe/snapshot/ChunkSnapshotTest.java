@@ -0,0 +1,115 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.universe.snapshot;
+
+import com.flowpowered.commons.store.block.AtomicBlockStore;
+import com.flowpowered.math.vector.Vector3i;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.spoutcraft.client.universe.world.Chunk;
+import org.spoutcraft.client.universe.world.World;
+
+/**
+ *
+ */
+public class ChunkSnapshotTest {
+    private static final Vector3i POSITION = new Vector3i(1, 2, 3);
+
+    @Test
+    public void testSingleBlockChange() {
+        final World world = new World("test");
+        final Chunk chunk = new Chunk(world, POSITION);
+        final ChunkSnapshot snapshot = new ChunkSnapshot(new WorldSnapshot(world), POSITION);
+        setBlockLight(chunk.getBlocks(), 8, 9, 10, 7);
+        // The first update always copies everything
+        Assert.assertTrue(snapshot.update(chunk));
+        Assert.assertTrue(snapshot.isFullUpdate());
+        // Nothing changed since
+        Assert.assertFalse(snapshot.update(chunk));
+        setBlockLight(chunk.getBlocks(), 1, 2, 3, 5);
+        Assert.assertTrue(snapshot.update(chunk));
+        Assert.assertFalse(snapshot.isFullUpdate());
+        final int[] changed = snapshot.getChangedBlocks();
+        Assert.assertEquals(1, changed.length);
+        Assert.assertEquals(1, ChunkSnapshot.getBlockX(changed[0]));
+        Assert.assertEquals(2, ChunkSnapshot.getBlockY(changed[0]));
+        Assert.assertEquals(3, ChunkSnapshot.getBlockZ(changed[0]));
+        Assert.assertEquals(5, snapshot.getBlockLight(1, 2, 3));
+        // The blocks that didn't change are kept
+        Assert.assertEquals(0, snapshot.getBlockLight(3, 2, 1));
+        Assert.assertEquals(7, snapshot.getBlockLight(8, 9, 10));
+        Assert.assertEquals(2, snapshot.getUpdateNumber());
+    }
+
+    @Test
+    public void testDirtyOverflow() {
+        final World world = new World("test");
+        final Chunk chunk = new Chunk(world, POSITION);
+        final ChunkSnapshot snapshot = new ChunkSnapshot(new WorldSnapshot(world), POSITION);
+        snapshot.update(chunk);
+        // More changes than the block store dirty arrays can track
+        final int size = Chunk.BLOCKS.SIZE;
+        for (int x = 0; x < size; x++) {
+            for (int z = 0; z < size; z++) {
+                setBlockLight(chunk.getBlocks(), x, 7, z, 1 + (x + z) % 15);
+            }
+        }
+        Assert.assertTrue(chunk.getBlocks().isDirtyOverflow());
+        Assert.assertTrue(snapshot.update(chunk));
+        Assert.assertTrue(snapshot.isFullUpdate());
+        Assert.assertEquals(0, snapshot.getChangedBlocks().length);
+        for (int x = 0; x < size; x++) {
+            for (int z = 0; z < size; z++) {
+                Assert.assertEquals(1 + (x + z) % 15, snapshot.getBlockLight(x, 7, z));
+                Assert.assertEquals(0, snapshot.getBlockLight(x, 6, z));
+            }
+        }
+    }
+
+    @Test
+    public void testReplacedBlockStore() {
+        final World world = new World("test");
+        final ChunkSnapshot snapshot = new ChunkSnapshot(new WorldSnapshot(world), POSITION);
+        final Chunk chunk = new Chunk(world, POSITION);
+        setBlockLight(chunk.getBlocks(), 0, 0, 0, 9);
+        snapshot.update(chunk);
+        Assert.assertEquals(9, snapshot.getBlockLight(0, 0, 0));
+        // A new chunk at the same position, such as one received from the server, replaces all the blocks even if a single one is dirty
+        final short[] blocks = new short[Chunk.BLOCKS.VOLUME];
+        final short[] data = new short[Chunk.BLOCKS.VOLUME];
+        data[data.length - 1] = 4 << 4;
+        final Chunk replaced = new Chunk(world, POSITION, Chunk.createBlockStore(blocks, data));
+        Assert.assertTrue(snapshot.update(replaced));
+        Assert.assertTrue(snapshot.isFullUpdate());
+        Assert.assertEquals(0, snapshot.getChangedBlocks().length);
+        Assert.assertEquals(0, snapshot.getBlockLight(0, 0, 0));
+        Assert.assertEquals(4, snapshot.getBlockLight(Chunk.BLOCKS.MASK, Chunk.BLOCKS.MASK, Chunk.BLOCKS.MASK));
+    }
+
+    private static void setBlockLight(AtomicBlockStore blocks, int x, int y, int z, int light) {
+        blocks.setBlock(x, y, z, (short) 0, (short) (light << 4));
+    }
+}
@@ -0,0 +1,195 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.universe.world;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.flowpowered.math.vector.Vector3i;
+
+/**
+ * A microbenchmark of chunk lookups, comparing the {@link org.spoutcraft.client.universe.world.ChunkMap} to the concurrent hash map keyed by vectors it replaced. Each reader thread looks up the
+ * loaded chunks in a loop while a writer thread replaces a column of chunks every millisecond, and the lookup throughput and the bytes allocated per lookup are printed. Run it with the number of loaded chunks and
+ * reader threads as arguments, 16384 and the available processors by default. Allocations are only measured on JVMs that support it.
+ */
+public class ChunkMapBenchmark {
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int ROUNDS = 5;
+    private static final long ROUND_MILLIS = 1000;
+
+    public static void main(String[] args) throws InterruptedException {
+        final int chunks = args.length > 0 ? Integer.parseInt(args[0]) : 16384;
+        final int readers = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        // A square of columns, 16 chunks high, for roughly the requested number of chunks
+        final int side = Math.max(1, (int) Math.sqrt(chunks / 16));
+        final ChunkMap<Object> chunkMap = new ChunkMap<>();
+        final Map<Vector3i, Object> vectorMap = new ConcurrentHashMap<>();
+        for (int x = 0; x < side; x++) {
+            for (int z = 0; z < side; z++) {
+                for (int y = 0; y < 16; y++) {
+                    final Object chunk = new Object();
+                    chunkMap.put(x, y, z, chunk);
+                    vectorMap.put(new Vector3i(x, y, z), chunk);
+                }
+            }
+        }
+        System.out.println(chunkMap.size() + " chunks, " + readers + " reader threads");
+        final Lookup chunkLookup = new Lookup() {
+            @Override
+            public Object get(int x, int y, int z) {
+                return chunkMap.get(x, y, z);
+            }
+
+            @Override
+            public void put(int x, int y, int z, Object chunk) {
+                chunkMap.put(x, y, z, chunk);
+            }
+        };
+        final Lookup vectorLookup = new Lookup() {
+            @Override
+            public Object get(int x, int y, int z) {
+                return vectorMap.get(new Vector3i(x, y, z));
+            }
+
+            @Override
+            public void put(int x, int y, int z, Object chunk) {
+                vectorMap.put(new Vector3i(x, y, z), chunk);
+            }
+        };
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            run(chunkLookup, side, readers);
+            run(vectorLookup, side, readers);
+        }
+        for (int i = 0; i < ROUNDS; i++) {
+            print("ChunkMap", run(chunkLookup, side, readers));
+            print("ConcurrentHashMap<Vector3i>", run(vectorLookup, side, readers));
+        }
+    }
+
+    private static void print(String name, Result result) {
+        final String allocated = result.bytes >= 0 ? String.format("%.2f bytes/lookup", result.bytes / (double) result.lookups) : "allocations not measured";
+        System.out.println(String.format("%-30s %10.2f Mlookups/s, %s", name, result.lookups / (ROUND_MILLIS * 1000d), allocated));
+    }
+
+    private static Result run(final Lookup lookup, final int side, int readers) throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(readers);
+        final AtomicLong lookups = new AtomicLong();
+        final AtomicLong bytes = new AtomicLong(isAllocationMeasured() ? 0 : -1);
+        final long end = System.currentTimeMillis() + ROUND_MILLIS;
+        for (int i = 0; i < readers; i++) {
+            final int offset = i * 7919;
+            new Thread() {
+                @Override
+                public void run() {
+                    awaitQuietly(start);
+                    final long allocated = getAllocatedBytes();
+                    long count = 0;
+                    int found = 0;
+                    int i = offset;
+                    while (System.currentTimeMillis() < end) {
+                        // Check the clock every few thousand lookups only
+                        for (int j = 0; j < 4096; j++, i++) {
+                            if (lookup.get(i % side, i & 15, i / 16 % side) != null) {
+                                found++;
+                            }
+                        }
+                        count += 4096;
+                    }
+                    if (found == 0) {
+                        throw new IllegalStateException("No chunk found");
+                    }
+                    lookups.addAndGet(count);
+                    if (bytes.get() >= 0) {
+                        bytes.addAndGet(getAllocatedBytes() - allocated);
+                    }
+                    done.countDown();
+                }
+            }.start();
+        }
+        final Thread writer = new Thread() {
+            @Override
+            public void run() {
+                awaitQuietly(start);
+                final Object chunk = new Object();
+                // Replace a column of chunks every millisecond, far more often than the game does
+                for (int i = 0; System.currentTimeMillis() < end; i++) {
+                    for (int y = 0; y < 16; y++) {
+                        lookup.put(i % side, y, i / side % side, chunk);
+                    }
+                    try {
+                        Thread.sleep(1);
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                }
+            }
+        };
+        writer.start();
+        start.countDown();
+        done.await();
+        writer.join();
+        return new Result(lookups.get(), bytes.get());
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static boolean isAllocationMeasured() {
+        return getAllocatedBytes() >= 0;
+    }
+
+    private static long getAllocatedBytes() {
+        final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    private static interface Lookup {
+        Object get(int x, int y, int z);
+
+        void put(int x, int y, int z, Object chunk);
+    }
+
+    private static class Result {
+        private final long lookups;
+        private final long bytes;
+
+        private Result(long lookups, long bytes) {
+            this.lookups = lookups;
+            this.bytes = bytes;
+        }
+    }
+}
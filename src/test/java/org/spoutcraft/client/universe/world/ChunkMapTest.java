@@ -0,0 +1,94 @@
+/**
+ * This file is part of Client, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) 2013-2014 Spoutcraft <http://spoutcraft.org/>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.spoutcraft.client.universe.world;
+
+import gnu.trove.procedure.TObjectProcedure;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ */
+public class ChunkMapTest {
+    private static final int[] COORDINATES = {0, 1, -1, 15, -16, 1000, -1000, (1 << 20) - 1, -(1 << 20)};
+
+    @Test
+    public void testKey() {
+        for (int x : COORDINATES) {
+            for (int y : COORDINATES) {
+                for (int z : COORDINATES) {
+                    final long key = ChunkMap.key(x, y, z);
+                    Assert.assertEquals(x, ChunkMap.keyX(key));
+                    Assert.assertEquals(y, ChunkMap.keyY(key));
+                    Assert.assertEquals(z, ChunkMap.keyZ(key));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testPutGetRemove() {
+        final ChunkMap<String> map = new ChunkMap<>();
+        Assert.assertNull(map.put(-1, 2, -3, "a"));
+        Assert.assertNull(map.put(1, 2, 3, "b"));
+        Assert.assertEquals("a", map.get(-1, 2, -3));
+        Assert.assertEquals("b", map.get(1, 2, 3));
+        Assert.assertFalse(map.containsKey(-1, -2, -3));
+        Assert.assertEquals(2, map.size());
+        Assert.assertEquals("a", map.remove(-1, 2, -3));
+        Assert.assertNull(map.get(-1, 2, -3));
+        Assert.assertEquals(1, map.size());
+    }
+
+    @Test
+    public void testManyEntries() {
+        // Enough entries to grow the tables of every stripe several times
+        final ChunkMap<Integer> map = new ChunkMap<>();
+        for (int i = 0; i < 4096; i++) {
+            Assert.assertNull(map.put(i % 16, i / 256, i / 16 % 16, i));
+        }
+        Assert.assertEquals(4096, map.size());
+        // Remove every other entry, the remaining ones must still be found
+        for (int i = 0; i < 4096; i += 2) {
+            Assert.assertEquals(Integer.valueOf(i), map.remove(i % 16, i / 256, i / 16 % 16));
+        }
+        Assert.assertEquals(2048, map.size());
+        for (int i = 0; i < 4096; i++) {
+            Assert.assertEquals(i % 2 == 0 ? null : Integer.valueOf(i), map.get(i % 16, i / 256, i / 16 % 16));
+        }
+        final int[] count = {0};
+        map.forEachValue(new TObjectProcedure<Integer>() {
+            @Override
+            public boolean execute(Integer value) {
+                Assert.assertEquals(1, value % 2);
+                count[0]++;
+                return true;
+            }
+        });
+        Assert.assertEquals(2048, count[0]);
+        map.clear();
+        Assert.assertEquals(0, map.size());
+    }
+}